@@ -0,0 +1,76 @@
+package com.diallee.view;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * 折叠算法的基准测试，使用等宽测量模拟宽度1080px、字号48px的控件
+ * 运行：./gradlew -Pbenchmark :benchmark:jmh
+ */
+@State(Scope.Benchmark)
+public class FoldEngineBenchmark {
+    private static final int CONTENT_WIDTH = 1080;
+    private static final float ADVANCE = 24f;
+    private static final int LINE_HEIGHT = 64;
+    private static final String LATIN_WORDS = "lorem ipsum dolor sit amet consectetur adipiscing elit sed do "
+            + "eiusmod tempor incididunt ut labore et dolore magna aliqua";
+    private static final String CJK_CHARS = "折叠文本控件在列表中展示评论内容超过最大行数时显示展开按钮点击后展示全部内容";
+
+    @Param({"50", "1000", "10000", "102400"})
+    public int textLength;
+
+    @Param({"LATIN", "CJK"})
+    public String script;
+
+    @Param({"1", "3", "10"})
+    public int maxLines;
+
+    @Param({"INLINE", "NEW_LINE", "ALIGN_RIGHT"})
+    public String suffixMode;
+
+    // 只排版前缀的阈值，0表示排版全文
+    @Param({"0", "4096"})
+    public int prefixThreshold;
+
+    private String text;
+    private boolean closeInNewLine;
+    private boolean closeAlignRight;
+
+    @Setup
+    public void setUp() {
+        text = "CJK".equals(script) ? createCjkText(textLength) : createLatinText(textLength);
+        closeInNewLine = "NEW_LINE".equals(suffixMode);
+        closeAlignRight = "ALIGN_RIGHT".equals(suffixMode);
+    }
+
+    @Benchmark
+    public FoldResult fold() {
+        MonospaceMeasurer measurer = new MonospaceMeasurer(text, "展开", "收起", ADVANCE, LINE_HEIGHT, CONTENT_WIDTH);
+        return FoldEngine.fold(measurer, maxLines, CONTENT_WIDTH, closeInNewLine, closeAlignRight, prefixThreshold);
+    }
+
+    private static String createLatinText(int length) {
+        String[] words = LATIN_WORDS.split(" ");
+        Random random = new Random(length);
+        StringBuilder builder = new StringBuilder(length + 16);
+        while (builder.length() < length) {
+            builder.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        builder.setLength(length);
+        return builder.toString();
+    }
+
+    private static String createCjkText(int length) {
+        Random random = new Random(length);
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append(CJK_CHARS.charAt(random.nextInt(CJK_CHARS.length())));
+        }
+        return builder.toString();
+    }
+}
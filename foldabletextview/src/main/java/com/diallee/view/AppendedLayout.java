@@ -0,0 +1,32 @@
+package com.diallee.view;
+
+import android.os.Build;
+import android.text.Layout;
+import android.text.SpannableStringBuilder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * 只在末尾追加内容的原文的排版，追加时DynamicLayout只重新排版最后一段，之前的段落不再测量
+ * 排版使用原文的副本，DynamicLayout设置在文本上的监听不会出现在显示的文本中，只在主线程中使用
+ */
+@RequiresApi(Build.VERSION_CODES.P)
+final class AppendedLayout {
+    private final SpannableStringBuilder text;
+    private final Layout layout;
+
+    AppendedLayout(@NonNull CharSequence text, @NonNull FoldConfig config) {
+        this.text = new SpannableStringBuilder(text);
+        this.layout = config.createDynamicLayout(this.text);
+    }
+
+    void append(@NonNull CharSequence appended) {
+        text.append(appended);
+    }
+
+    @NonNull
+    Layout getLayout() {
+        return layout;
+    }
+}
@@ -0,0 +1,105 @@
+package com.diallee.view;
+
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.style.ClickableSpan;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 按行索引的ClickableSpan，排版后构建一次，触摸时只查找所在行的几个span，不再扫描整个文本
+ */
+final class ClickableSpanIndex {
+    private final Layout mLayout;
+    private final CharSequence mText;
+    // 构建时的文本长度和行数，追加文本后layout和text对象不变，但span的位置和行数已经改变
+    private final int mTextLength, mLineCount;
+    // 按起始位置排序的span及其范围
+    private final ClickableSpan[] mSpans;
+    private final int[] mStarts, mEnds;
+    // 第i行相交的span在mLineSpans中的范围为[mLineOffsets[i], mLineOffsets[i + 1])，按起始位置排序
+    private final int[] mLineOffsets;
+    private final int[] mLineSpans;
+
+    private ClickableSpanIndex(Layout layout, Spanned text) {
+        mLayout = layout;
+        mText = text;
+        mTextLength = text.length();
+        mLineCount = layout.getLineCount();
+        final ClickableSpan[] spans = text.getSpans(0, text.length(), ClickableSpan.class);
+        final Spanned spanned = text;
+        Arrays.sort(spans, new Comparator<ClickableSpan>() {
+            @Override
+            public int compare(ClickableSpan a, ClickableSpan b) {
+                return Integer.compare(spanned.getSpanStart(a), spanned.getSpanStart(b));
+            }
+        });
+        mSpans = spans;
+        mStarts = new int[spans.length];
+        mEnds = new int[spans.length];
+        int lineCount = mLineCount;
+        mLineOffsets = new int[lineCount + 1];
+        // 第一遍统计每一行相交的span数量，第二遍填充
+        for (int i = 0; i < spans.length; i++) {
+            mStarts[i] = text.getSpanStart(spans[i]);
+            mEnds[i] = text.getSpanEnd(spans[i]);
+            int lastLine = layout.getLineForOffset(mEnds[i]);
+            for (int line = layout.getLineForOffset(mStarts[i]); line <= lastLine; line++) {
+                mLineOffsets[line + 1]++;
+            }
+        }
+        for (int line = 0; line < lineCount; line++) {
+            mLineOffsets[line + 1] += mLineOffsets[line];
+        }
+        mLineSpans = new int[mLineOffsets[lineCount]];
+        int[] fill = Arrays.copyOf(mLineOffsets, lineCount);
+        for (int i = 0; i < spans.length; i++) {
+            int lastLine = layout.getLineForOffset(mEnds[i]);
+            for (int line = layout.getLineForOffset(mStarts[i]); line <= lastLine; line++) {
+                mLineSpans[fill[line]++] = i;
+            }
+        }
+    }
+
+    /**
+     * 返回layout和text对应的索引，已有的索引仍然有效（对象、文本长度和行数都相同）时直接复用
+     */
+    @NonNull
+    static ClickableSpanIndex obtain(@Nullable ClickableSpanIndex index, @NonNull Layout layout,
+                                     @NonNull Spanned text) {
+        if (index != null && index.mLayout == layout && index.mText == text
+                && index.mTextLength == text.length() && index.mLineCount == layout.getLineCount()) {
+            return index;
+        }
+        return new ClickableSpanIndex(layout, text);
+    }
+
+    /**
+     * 查找坐标处的span，与{@link android.text.method.LinkMovementMethod}一样包含span的结束位置
+     *
+     * @param x 相对于layout的横坐标
+     * @param y 相对于layout的纵坐标
+     */
+    @Nullable
+    ClickableSpan find(int x, int y) {
+        if (mSpans.length == 0) {
+            return null;
+        }
+        int line = mLayout.getLineForVertical(y);
+        int offset = mLayout.getOffsetForHorizontal(line, x);
+        for (int i = mLineOffsets[line]; i < mLineOffsets[line + 1]; i++) {
+            int span = mLineSpans[i];
+            if (mStarts[span] > offset) {
+                break;
+            }
+            if (mEnds[span] >= offset) {
+                return mSpans[span];
+            }
+        }
+        return null;
+    }
+}
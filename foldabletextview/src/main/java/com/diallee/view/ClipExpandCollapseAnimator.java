@@ -0,0 +1,134 @@
+package com.diallee.view;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 通过裁剪区域实现的展开和收起动画，执行期间不修改LayoutParams、不触发requestLayout
+ * 控件保持最终展开的高度，每一帧只更新自身的裁剪区域和其后面兄弟控件的translationY
+ */
+final class ClipExpandCollapseAnimator {
+    private static final long DURATION = 400;
+
+    private final View mTargetView;
+    private final Rect mClipBounds = new Rect();
+    private final List<View> mFollowingViews = new ArrayList<>();
+    private final List<Float> mFollowingTranslations = new ArrayList<>();
+    @Nullable
+    private ValueAnimator mAnimator;
+    // 最近一次动画执行的帧数和开始时间
+    private int mFrameCount;
+    private long mStartMillis;
+
+    ClipExpandCollapseAnimator(@NonNull View target) {
+        mTargetView = target;
+    }
+
+    /**
+     * @param startHeight 动画开始时的可见高度
+     * @param endHeight   动画结束时的可见高度
+     * @param fullHeight  动画期间控件实际布局的高度
+     * @param endAction   动画结束后执行
+     */
+    void start(int startHeight, int endHeight, final int fullHeight, @Nullable final Runnable endAction) {
+        cancel();
+        collectFollowingViews();
+        mAnimator = ValueAnimator.ofInt(startHeight, endHeight);
+        mAnimator.setDuration(DURATION);
+        mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                mFrameCount++;
+                applyVisibleHeight((int) animation.getAnimatedValue(), fullHeight);
+            }
+        });
+        mAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                reset();
+                if (endAction != null) {
+                    endAction.run();
+                }
+            }
+        });
+        applyVisibleHeight(startHeight, fullHeight);
+        mFrameCount = 0;
+        mStartMillis = SystemClock.uptimeMillis();
+        mAnimator.start();
+    }
+
+    int getFrameCount() {
+        return mFrameCount;
+    }
+
+    long getElapsedMillis() {
+        return SystemClock.uptimeMillis() - mStartMillis;
+    }
+
+    void cancel() {
+        if (mAnimator != null) {
+            mAnimator.removeAllListeners();
+            mAnimator.cancel();
+            mAnimator = null;
+            reset();
+        }
+    }
+
+    private void applyVisibleHeight(int visibleHeight, int fullHeight) {
+        mClipBounds.set(0, 0, mTargetView.getWidth(), visibleHeight);
+        mTargetView.setClipBounds(mClipBounds);
+        float offset = visibleHeight - fullHeight;
+        for (int i = 0; i < mFollowingViews.size(); i++) {
+            mFollowingViews.get(i).setTranslationY(mFollowingTranslations.get(i) + offset);
+        }
+    }
+
+    private void reset() {
+        mTargetView.setClipBounds(null);
+        for (int i = 0; i < mFollowingViews.size(); i++) {
+            mFollowingViews.get(i).setTranslationY(mFollowingTranslations.get(i));
+        }
+        mFollowingViews.clear();
+        mFollowingTranslations.clear();
+    }
+
+    /**
+     * 收集位于控件下方、会随控件高度变化而移动的兄弟控件
+     * 逐级向上查找，直到父控件的高度不随内容变化或者父控件可以滚动
+     */
+    private void collectFollowingViews() {
+        mFollowingViews.clear();
+        mFollowingTranslations.clear();
+        View child = mTargetView;
+        ViewParent parent = child.getParent();
+        while (parent instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) parent;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                View sibling = group.getChildAt(i);
+                if (sibling != child && sibling.getTop() >= child.getBottom()) {
+                    mFollowingViews.add(sibling);
+                    mFollowingTranslations.add(sibling.getTranslationY());
+                }
+            }
+            ViewGroup.LayoutParams params = group.getLayoutParams();
+            if (group.isScrollContainer() || params == null
+                    || params.height != ViewGroup.LayoutParams.WRAP_CONTENT) {
+                break;
+            }
+            child = group;
+            parent = group.getParent();
+        }
+    }
+}
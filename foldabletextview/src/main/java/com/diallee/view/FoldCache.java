@@ -0,0 +1,289 @@
+package com.diallee.view;
+
+import android.text.Spanned;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内共享的折叠结果缓存，按最近最少使用淘汰，同时限制条目数和估算的内存占用
+ * 相同的文本在相同的宽度和排版配置下再次绑定时无需创建任何StaticLayout
+ */
+public final class FoldCache {
+    private static final int DEFAULT_MAX_ENTRIES = 512;
+    private static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+    // 每个条目除文本外的估算开销
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private static volatile FoldCache sInstance;
+
+    private final LinkedHashMap<Key, FoldResult> map = new LinkedHashMap<>(0, 0.75f, true);
+    private int maxEntries;
+    private int maxBytes;
+    private int bytes;
+
+    private int putCount;
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+    private int diskHitCount;
+
+    // 第二级的持久化缓存
+    @Nullable
+    private FoldDiskCache diskCache;
+
+    public FoldCache(int maxEntries, int maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxEntries <= 0 || maxBytes <= 0");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 默认的全局缓存
+     */
+    @NonNull
+    public static FoldCache getInstance() {
+        if (sInstance == null) {
+            synchronized (FoldCache.class) {
+                if (sInstance == null) {
+                    sInstance = new FoldCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 修改缓存的大小限制
+     *
+     * @param maxEntries 最大条目数
+     * @param maxBytes   最大估算字节数
+     */
+    public synchronized void resize(int maxEntries, int maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxEntries <= 0 || maxBytes <= 0");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        trimToSize();
+    }
+
+    /**
+     * 设置持久化缓存，内存中未命中时再从中查找，新的结果同时写入
+     *
+     * @param diskCache 为null时只使用内存缓存
+     */
+    public synchronized void setDiskCache(@Nullable FoldDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    @Nullable
+    public synchronized FoldDiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    @Nullable
+    synchronized FoldResult get(@NonNull Key key) {
+        FoldResult result = map.get(key);
+        if (result == null && diskCache != null && key.isPersistable()) {
+            result = diskCache.get(key.textHash(), key.fingerprint());
+            if (result != null) {
+                diskHitCount++;
+                map.put(key, result);
+                bytes += key.sizeOf();
+                trimToSize();
+            }
+        }
+        if (result != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return result;
+    }
+
+    synchronized void put(@NonNull Key key, @NonNull FoldResult result) {
+        putCount++;
+        FoldResult previous = map.put(key, result);
+        if (previous == null) {
+            bytes += key.sizeOf();
+        }
+        trimToSize();
+        if (diskCache != null && key.isPersistable()) {
+            diskCache.put(key.textHash(), key.fingerprint(), result);
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<Key, FoldResult>> iterator = map.entrySet().iterator();
+        while ((map.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            Key key = iterator.next().getKey();
+            iterator.remove();
+            bytes -= key.sizeOf();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void evictAll() {
+        map.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized int bytes() {
+        return bytes;
+    }
+
+    public synchronized int maxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized int maxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int putCount() {
+        return putCount;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    public synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 从持久化缓存中命中的次数，已包含在{@link #hitCount()}中
+     */
+    public synchronized int diskHitCount() {
+        return diskHitCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int accesses = hitCount + missCount;
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format("FoldCache[maxEntries=%d,maxBytes=%d,hits=%d,diskHits=%d,misses=%d,evictions=%d,hitRate=%d%%]",
+                maxEntries, maxBytes, hitCount, diskHitCount, missCount, evictionCount, hitPercent);
+    }
+
+    /**
+     * 缓存键：文本 + 文本处理器 + 排版配置
+     * 普通字符串按内容比较；带样式的文本其span会影响排版，按对象比较，文本处理器同样按对象比较
+     * 按对象比较的文本和处理器只持有弱引用，缓存不会让列表条目的文本和处理器无法回收，回收后条目不再命中，随后被淘汰
+     */
+    static final class Key {
+        // 普通字符串，带样式的文本为null
+        @Nullable
+        private final String text;
+        @Nullable
+        private final WeakReference<CharSequence> spannedRef;
+        private final int textLength;
+        @Nullable
+        private final WeakReference<Object> handlerRef;
+        // 持久化缓存只能按处理器的类区分
+        @Nullable
+        private final String handlerClassName;
+        private final FoldConfig config;
+        private final int hashCode;
+        // 持久化缓存使用的内容哈希和配置指纹，首次使用时计算
+        private long textHash;
+        private long fingerprint;
+
+        Key(@NonNull CharSequence text, @Nullable Object handler, @NonNull FoldConfig config) {
+            if (text instanceof Spanned) {
+                this.text = null;
+                this.spannedRef = new WeakReference<>(text);
+            } else {
+                this.text = text.toString();
+                this.spannedRef = null;
+            }
+            this.textLength = text.length();
+            this.handlerRef = handler != null ? new WeakReference<>(handler) : null;
+            this.handlerClassName = handler != null ? handler.getClass().getName() : null;
+            this.config = config;
+            int result = this.text != null ? this.text.hashCode() : System.identityHashCode(text);
+            result = 31 * result + (handler != null ? System.identityHashCode(handler) : 0);
+            result = 31 * result + config.hashCode();
+            hashCode = result;
+        }
+
+        /**
+         * 带样式的文本按对象比较，不能在进程之间复用
+         */
+        boolean isPersistable() {
+            return text != null;
+        }
+
+        long textHash() {
+            if (textHash == 0) {
+                textHash = FoldDiskCache.hashText(text);
+            }
+            return textHash;
+        }
+
+        long fingerprint() {
+            if (fingerprint == 0) {
+                long result = config.fingerprint();
+                fingerprint = FoldDiskCache.hash(result, handlerClassName);
+            }
+            return fingerprint;
+        }
+
+        int sizeOf() {
+            return textLength * 2 + ENTRY_OVERHEAD_BYTES;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            if (hashCode != that.hashCode || textLength != that.textLength
+                    || !sameReferent(handlerRef, that.handlerRef)) {
+                return false;
+            }
+            boolean textEquals = text != null ? text.equals(that.text) : sameReferent(spannedRef, that.spannedRef);
+            return textEquals && config.equals(that.config);
+        }
+
+        /**
+         * 两个弱引用是否指向同一个还没有回收的对象，都为null时相等
+         */
+        private static boolean sameReferent(@Nullable WeakReference<?> a, @Nullable WeakReference<?> b) {
+            if (a == null || b == null) {
+                return a == b;
+            }
+            Object referent = a.get();
+            return referent != null && referent == b.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package com.diallee.view;
+
+import android.os.Trace;
+import android.text.Layout;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 折叠计算，只依赖排版配置和文本处理器，不依赖View，可以在后台线程中执行
+ * 例如在分页数据到达时通过{@link #foldAll}预先计算整页文本的折叠结果
+ */
+public final class FoldCalculator {
+    private final FoldConfig config;
+    @Nullable
+    private final FoldableTextView.CharSequenceToSpannableHandler handler;
+    // 用于测量的展开和收起后缀，只包含影响排版的样式
+    @Nullable
+    private final Spanned openSuffixSpan, closeSuffixSpan;
+
+    public FoldCalculator(@NonNull FoldConfig config,
+                          @Nullable FoldableTextView.CharSequenceToSpannableHandler handler) {
+        this.config = config;
+        this.handler = handler;
+        this.openSuffixSpan = SuffixSpans.measureSpan(config.openSuffix);
+        this.closeSuffixSpan = SuffixSpans.measureSpan(config.closeSuffix);
+    }
+
+    /**
+     * 计算折叠结果：是否可以展开、收起时的截取位置、两种状态的高度以及收起后缀的位置
+     */
+    @NonNull
+    public FoldResult fold(@NonNull CharSequence text) {
+        if (config.maxLines <= 0) {
+            return FoldResult.NOT_EXPANDABLE;
+        }
+        return fold(text, config.handleOnce ? toSpannable(handler, text) : null, null);
+    }
+
+    /**
+     * @param text        原文
+     * @param handledText 只处理一次模式下原文经过handler处理后的文本，其余模式为null
+     * @param metrics     不为null时记录排版和调用handler的次数
+     */
+    @NonNull
+    FoldResult fold(@NonNull CharSequence text, @Nullable Spanned handledText, @Nullable FoldMetrics metrics) {
+        Trace.beginSection("FoldCalculator#fold");
+        try {
+            LayoutMeasurer measurer = new LayoutMeasurer(text, handledText, metrics);
+            // 预先计算的文本排版全文不需要重新测量，不再只排版前缀
+            return FoldEngine.fold(measurer, config.maxLines, config.contentWidth, config.closeInNewLine,
+                    config.closeAlignRight, measurer.precomputed != null ? 0 : config.prefixThreshold);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * 只排版前缀时收起后缀的位置推迟到展开时计算，排版全文得到完整的折叠结果
+     *
+     * @param text        原文
+     * @param handledText 只处理一次模式下原文经过handler处理后的文本，其余模式为null
+     * @param result      推迟计算收起后缀位置的折叠结果
+     */
+    @NonNull
+    FoldResult resolveDeferred(@NonNull CharSequence text, @Nullable Spanned handledText,
+                               @NonNull FoldResult result) {
+        Trace.beginSection("FoldCalculator#resolveDeferred");
+        try {
+            return FoldEngine.resolveDeferred(new LayoutMeasurer(text, handledText, null), result,
+                    config.contentWidth, config.closeInNewLine, config.closeAlignRight);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * 原文在末尾追加内容后计算展开状态：收起后缀的位置和展开的高度
+     * 直接使用已经排版好的原文，只重新排版最后一段 + 收起后缀，耗时与最后一段的长度有关，与原文的总长度无关
+     *
+     * @param text       追加后的原文，不能使用handler
+     * @param result     {@link FoldResult#forAppendedText()}得到的折叠结果
+     * @param textLayout 追加后的原文的排版
+     */
+    @NonNull
+    FoldResult resolveAppended(@NonNull CharSequence text, @NonNull FoldResult result, @NonNull Layout textLayout) {
+        Trace.beginSection("FoldCalculator#resolveAppended");
+        try {
+            LayoutMeasurer measurer = new LayoutMeasurer(text, textLayout);
+            FoldResult resolved = FoldEngine.resolveDeferred(measurer, result, config.contentWidth,
+                    config.closeInNewLine, config.closeAlignRight);
+            if (!resolved.expandable || resolved.openHeight != FoldResult.UNKNOWN_HEIGHT) {
+                return resolved;
+            }
+            int openHeight = resolved.closeSuffixMode == FoldResult.CLOSE_SUFFIX_NONE
+                    ? textLayout.getHeight()
+                    : measurer.layoutOpenTail(SuffixSpans.openTail(closeSuffixSpan, true, 0)).getHeight();
+            return new FoldResult(true, resolved.closePosition, resolved.closeHeight, openHeight,
+                    resolved.closeSuffixMode, resolved.closeSuffixGap);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * 分页展开时计算下一页，只排版从start开始的一段文本，耗时与原文的总长度无关
+     *
+     * @param text        原文
+     * @param handledText 只处理一次模式下原文经过handler处理后的文本，其余模式为null
+     * @param start       当前页最后一行的起始位置
+     * @param end         参与排版的文本结束位置，不包含已经追加的后缀
+     * @param lines       从start开始排版的行数
+     * @return 剩余的内容能在lines行内放下时返回null
+     */
+    @Nullable
+    FoldEngine.Page foldPage(@NonNull CharSequence text, @Nullable Spanned handledText,
+                             int start, int end, int lines) {
+        Trace.beginSection("FoldCalculator#foldPage");
+        try {
+            FoldEngine.Page page = FoldEngine.foldPage(new LayoutMeasurer(text, handledText, start, end, null),
+                    lines, config.contentWidth);
+            if (page == null) {
+                return null;
+            }
+            return new FoldEngine.Page(start + page.closePosition, start + page.lastLineStart, page.height);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * 在executor中并行计算多个文本的折叠结果，调用线程会阻塞直到全部计算完成，不能在主线程调用
+     * 注意：handler会在executor的多个线程中同时调用
+     *
+     * @param texts     文本列表
+     * @param config    排版配置
+     * @param handler   文本内容处理
+     * @param foldCache 不为null时计算结果会放入缓存，控件绑定相同文本时直接命中
+     * @param executor  执行计算的线程池，例如ForkJoinPool
+     * @return 与texts顺序一致的折叠结果
+     */
+    @NonNull
+    public static List<FoldResult> foldAll(@NonNull final List<? extends CharSequence> texts,
+                                           @NonNull FoldConfig config,
+                                           @Nullable final FoldableTextView.CharSequenceToSpannableHandler handler,
+                                           @Nullable final FoldCache foldCache,
+                                           @NonNull Executor executor) throws InterruptedException {
+        final int size = texts.size();
+        final FoldResult[] results = new FoldResult[size];
+        final int taskCount = Math.min(size, Runtime.getRuntime().availableProcessors());
+        final CountDownLatch latch = new CountDownLatch(taskCount);
+        final AtomicReference<RuntimeException> error = new AtomicReference<>();
+        for (int i = 0; i < taskCount; i++) {
+            final int start = i;
+            // 每个任务使用独立的画笔排版
+            final FoldConfig taskConfig = config.copy();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        FoldCalculator calculator = new FoldCalculator(taskConfig, handler);
+                        for (int index = start; index < size; index += taskCount) {
+                            CharSequence text = texts.get(index);
+                            FoldCache.Key key = foldCache != null ? new FoldCache.Key(text, handler, taskConfig) : null;
+                            FoldResult result = key != null ? foldCache.get(key) : null;
+                            if (result == null) {
+                                result = calculator.fold(text);
+                                if (key != null) {
+                                    foldCache.put(key, result);
+                                }
+                            }
+                            results[index] = result;
+                        }
+                    } catch (RuntimeException e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        latch.await();
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 构建用于测量的收起状态文本：原文从start开始的closePos个字符 + 省略号 + 展开后缀
+     */
+    private CharSequence buildCloseText(CharSequence text, @Nullable Spanned handledText,
+                                        int start, int closePos) {
+        if (handledText != null) {
+            return buildCloseText(handledText, start, closePos, openSuffixSpan);
+        }
+        if (handler == null) {
+            return buildCloseText(text, start, closePos, openSuffixSpan);
+        }
+        if (start > 0) {
+            text = text.subSequence(start, Math.min(start + closePos, text.length()));
+        }
+        return buildCloseText(handler, text, closePos, openSuffixSpan);
+    }
+
+    /**
+     * 构建用于测量的完整文本 + 后缀，不需要调用handler时不复制原文
+     */
+    private CharSequence buildFullText(CharSequence text, @Nullable Spanned handledText,
+                                       int start, int end, CharSequence suffix) {
+        if (handledText != null) {
+            return new FoldedText(handledText, start, end, suffix);
+        }
+        if (handler == null) {
+            return new FoldedText(text, start, end, suffix);
+        }
+        return toSpannable(handler, start == 0 && end == text.length() ? text : text.subSequence(start, end))
+                .append(suffix);
+    }
+
+    /**
+     * 从已经处理过的文本中截取构建收起状态的文本，跨越截取位置的span会被保留并截断，不再调用handler
+     * 返回的文本是原文的视图，不复制原文的字符和span
+     */
+    static CharSequence buildCloseText(@NonNull CharSequence handledText, int closePos,
+                                       @Nullable CharSequence openSuffix) {
+        return buildCloseText(handledText, 0, closePos, openSuffix);
+    }
+
+    /**
+     * 从已经处理过的文本中截取从start开始的closePos个字符构建收起状态的文本
+     */
+    static CharSequence buildCloseText(@NonNull CharSequence handledText, int start, int closePos,
+                                       @Nullable CharSequence openSuffix) {
+        return new FoldedText(handledText, start, Math.min(start + closePos, handledText.length()),
+                SuffixSpans.closeTail(openSuffix));
+    }
+
+    /**
+     * 构建收起状态的文本：原文前closePos个字符 + 省略号 + 展开后缀
+     */
+    static CharSequence buildCloseText(
+            @Nullable FoldableTextView.CharSequenceToSpannableHandler handler,
+            @NonNull CharSequence text, int closePos, @Nullable CharSequence openSuffix) {
+        if (handler == null) {
+            return buildCloseText(text, closePos, openSuffix);
+        }
+        SpannableStringBuilder closeText;
+        if (text.length() <= closePos) {
+            closeText = toSpannable(handler, text);
+        } else {
+            closeText = toSpannable(handler, text.subSequence(0, closePos));
+        }
+        return toSpannable(handler, closeText).append(SuffixSpans.closeTail(openSuffix));
+    }
+
+    static SpannableStringBuilder toSpannable(
+            @Nullable FoldableTextView.CharSequenceToSpannableHandler handler,
+            @NonNull CharSequence charSequence) {
+        SpannableStringBuilder spannableStringBuilder = null;
+        if (handler != null) {
+            FoldStatistics.getInstance().countHandler();
+            spannableStringBuilder = handler.charSequenceToSpannable(charSequence);
+        }
+        if (spannableStringBuilder == null) {
+            FoldStatistics.getInstance().countSpannable();
+            spannableStringBuilder = new SpannableStringBuilder(charSequence);
+        }
+        return spannableStringBuilder;
+    }
+
+    /**
+     * 使用StaticLayout排版测量，只测量原文中[start, end)的部分
+     */
+    private final class LayoutMeasurer implements FoldEngine.Measurer {
+        private final CharSequence text;
+        @Nullable
+        private final Spanned handledText;
+        private final int start, end;
+        @Nullable
+        private final FoldMetrics metrics;
+        // 可以复用测量结果的预先计算的原文
+        @Nullable
+        private final CharSequence precomputed;
+        // 已经排版好的原文，后缀只影响最后一段，之前的行可以直接使用
+        @Nullable
+        private Layout textLayout;
+
+        LayoutMeasurer(CharSequence text, @Nullable Spanned handledText, @Nullable FoldMetrics metrics) {
+            this(text, handledText, 0, handledText != null ? handledText.length() : text.length(), metrics);
+        }
+
+        LayoutMeasurer(CharSequence text, @Nullable Spanned handledText, int start, int end,
+                       @Nullable FoldMetrics metrics) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.metrics = metrics;
+            // 没有handler时只处理一次模式下的handledText只是原文的副本，直接使用预先计算的原文
+            this.precomputed = handler == null && start == 0 && end == text.length()
+                    ? PrecomputedTexts.obtain(text, config) : null;
+            this.handledText = precomputed != null ? null : handledText;
+        }
+
+        LayoutMeasurer(CharSequence text, @NonNull Layout textLayout) {
+            this.text = text;
+            this.handledText = null;
+            this.start = 0;
+            this.end = text.length();
+            this.metrics = null;
+            this.precomputed = null;
+            this.textLayout = textLayout;
+        }
+
+        private Layout createLayout(CharSequence layoutText) {
+            if (metrics != null) {
+                metrics.layoutCount++;
+            }
+            return config.createLayout(layoutText);
+        }
+
+        private FoldEngine.Lines layout(CharSequence layoutText) {
+            return new LayoutLines(createLayout(layoutText));
+        }
+
+        /**
+         * 后缀只影响最后一段的换行，之前的行直接使用已经排版好的原文，只排版最后一段 + 后缀
+         * 包含字体内边距时每段的第一行高度不同，不能拼接
+         */
+        @Nullable
+        private FoldEngine.Lines layoutLastParagraph(CharSequence tail) {
+            if (textLayout == null || config.includePad) {
+                return null;
+            }
+            int length = text.length();
+            int paragraphStart = TextUtils.lastIndexOf(text, '\n', length - 1) + 1;
+            int headLines = textLayout.getLineForOffset(paragraphStart);
+            Layout tailLayout = createLayout(new FoldedText(text, paragraphStart, length, tail));
+            return new ParagraphLines(textLayout, headLines, tailLayout, paragraphStart);
+        }
+
+        private void countHandler(int count) {
+            if (metrics != null && handler != null && handledText == null) {
+                metrics.handlerCount += count;
+            }
+        }
+
+        @Override
+        public int textLength() {
+            return end - start;
+        }
+
+        @Override
+        public int estimate(int maxLines) {
+            int estimate;
+            if (precomputed != null || (handler != null && handledText == null)) {
+                // 预先计算的文本排版全文不需要重新测量；handler会修改文本，处理前无法估算
+                estimate = FoldMetrics.ESTIMATE_UNCERTAIN;
+            } else {
+                estimate = FoldEstimator.estimate(handledText != null ? handledText : text, start, end, config, maxLines);
+            }
+            FoldStatistics.getInstance().countEstimate(estimate);
+            if (metrics != null) {
+                metrics.estimate = estimate;
+            }
+            return estimate;
+        }
+
+        @Override
+        public FoldEngine.Lines layoutText() {
+            if (textLayout != null) {
+                return new LayoutLines(textLayout);
+            }
+            if (precomputed != null) {
+                textLayout = createLayout(precomputed);
+                return new LayoutLines(textLayout);
+            }
+            if (start == 0 && end == (handledText != null ? handledText.length() : text.length())) {
+                if (handledText != null || handler == null) {
+                    return layout(handledText != null ? handledText : text);
+                }
+                countHandler(1);
+                return layout(toSpannable(handler, text));
+            }
+            return layoutTextPrefix(end - start);
+        }
+
+        @Override
+        public FoldEngine.Lines layoutTextPrefix(int length) {
+            if (handledText != null) {
+                return layout(new FoldedText(handledText, start, start + length, null));
+            }
+            if (handler == null) {
+                return layout(new FoldedText(text, start, start + length, null));
+            }
+            countHandler(1);
+            return layout(toSpannable(handler, text.subSequence(start, start + length)));
+        }
+
+        @Override
+        public boolean isGreedyLineBreak() {
+            return config.isGreedyLineBreak();
+        }
+
+        @Override
+        public int paragraphEnd(int offset) {
+            // 与layoutTextPrefix一致，只处理一次模式下位置对应处理后的文本
+            if (offset == 0) {
+                return 0;
+            }
+            CharSequence source = handledText != null ? handledText : text;
+            int newline = TextUtils.indexOf(source, '\n', start + offset - 1, end);
+            return newline < 0 ? end - start : newline + 1 - start;
+        }
+
+        @Override
+        public int estimateLineLength() {
+            // 按平均字宽为半个字号估算
+            return (int) Math.ceil(config.contentWidth / Math.max(1f, config.paint.getTextSize() * 0.5f));
+        }
+
+        @Override
+        public FoldEngine.Lines layoutCloseText(int closePos) {
+            countHandler(2);
+            return layout(buildCloseText(text, handledText, start, closePos));
+        }
+
+        @Override
+        public FoldEngine.Lines layoutOpenText(int gap) {
+            return layoutOpenTail(SuffixSpans.openTail(closeSuffixSpan, false, gap));
+        }
+
+        /**
+         * 排版原文 + 拼接好的收起后缀
+         */
+        FoldEngine.Lines layoutOpenTail(CharSequence tail) {
+            FoldEngine.Lines lines = layoutLastParagraph(tail);
+            if (lines != null) {
+                return lines;
+            }
+            countHandler(1);
+            return layout(buildFullText(text, handledText, start, end, tail));
+        }
+
+        @Override
+        public float closeSuffixWidth() {
+            return Layout.getDesiredWidth(SuffixSpans.closeTail(openSuffixSpan), config.paint);
+        }
+
+        @Override
+        public boolean hasCloseSuffix() {
+            return closeSuffixSpan != null;
+        }
+    }
+
+    /**
+     * 原文排版的前headLines行拼接最后一段 + 后缀的排版
+     */
+    private static final class ParagraphLines implements FoldEngine.Lines {
+        private final Layout head;
+        private final int headLines;
+        private final Layout tail;
+        // 最后一段在原文中的起始位置
+        private final int tailStart;
+
+        ParagraphLines(Layout head, int headLines, Layout tail, int tailStart) {
+            this.head = head;
+            this.headLines = headLines;
+            this.tail = tail;
+            this.tailStart = tailStart;
+        }
+
+        @Override
+        public int getLineCount() {
+            return headLines + tail.getLineCount();
+        }
+
+        @Override
+        public int getLineStart(int line) {
+            return line < headLines ? head.getLineStart(line) : tailStart + tail.getLineStart(line - headLines);
+        }
+
+        @Override
+        public int getLineEnd(int line) {
+            return line < headLines ? head.getLineEnd(line) : tailStart + tail.getLineEnd(line - headLines);
+        }
+
+        @Override
+        public int getHeight() {
+            return head.getLineTop(headLines) + tail.getHeight();
+        }
+
+        @Override
+        public float getLineWidth(int line) {
+            return line < headLines ? head.getLineWidth(line) : tail.getLineWidth(line - headLines);
+        }
+
+        @Override
+        public int getOffsetForHorizontal(int line, float horiz) {
+            return line < headLines ? head.getOffsetForHorizontal(line, horiz)
+                    : tailStart + tail.getOffsetForHorizontal(line - headLines, horiz);
+        }
+    }
+
+    private static final class LayoutLines implements FoldEngine.Lines {
+        private final Layout layout;
+
+        LayoutLines(Layout layout) {
+            this.layout = layout;
+        }
+
+        @Override
+        public int getLineCount() {
+            return layout.getLineCount();
+        }
+
+        @Override
+        public int getLineStart(int line) {
+            return layout.getLineStart(line);
+        }
+
+        @Override
+        public int getLineEnd(int line) {
+            return layout.getLineEnd(line);
+        }
+
+        @Override
+        public int getHeight() {
+            return layout.getHeight();
+        }
+
+        @Override
+        public float getLineWidth(int line) {
+            return layout.getLineWidth(line);
+        }
+
+        @Override
+        public int getOffsetForHorizontal(int line, float horiz) {
+            return layout.getOffsetForHorizontal(line, horiz);
+        }
+    }
+}
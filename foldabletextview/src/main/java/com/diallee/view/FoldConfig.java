@@ -0,0 +1,455 @@
+package com.diallee.view;
+
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.LocaleList;
+import android.text.DynamicLayout;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.Locale;
+
+/**
+ * 折叠计算使用的排版配置快照，包含影响StaticLayout排版结果的全部参数，
+ * 同时作为折叠结果缓存键的一部分
+ * 可以通过{@link FoldableTextView#getFoldConfig(int)}获取与控件一致的配置
+ */
+public final class FoldConfig {
+    final TextPaint paint;
+    // 文本可展示宽度，不包含paddingLeft和paddingRight
+    final int contentWidth;
+    final int maxLines;
+    final float lineSpacingExtra;
+    final float lineSpacingMultiplier;
+    final boolean includePad;
+    final boolean fallbackLineSpacing;
+    final int breakStrategy;
+    final int hyphenationFrequency;
+    final int justificationMode;
+    final String openSuffix;
+    final String closeSuffix;
+    final boolean closeInNewLine;
+    final boolean closeAlignRight;
+    // 是否只对原文调用一次CharSequenceToSpannableHandler，收起的文本从处理结果中截取
+    final boolean handleOnce;
+    // 原文长度超过该值时只排版足够判断折叠的前缀，为0时总是排版全文
+    final int prefixThreshold;
+
+    private final int hashCode;
+    // 持久化缓存使用的稳定指纹，0表示尚未计算
+    private volatile long fingerprint;
+
+    private FoldConfig(Builder builder) {
+        paint = new TextPaint(builder.paint);
+        contentWidth = builder.contentWidth;
+        maxLines = builder.maxLines;
+        lineSpacingExtra = builder.lineSpacingExtra;
+        lineSpacingMultiplier = builder.lineSpacingMultiplier;
+        includePad = builder.includePad;
+        fallbackLineSpacing = builder.fallbackLineSpacing;
+        breakStrategy = builder.breakStrategy;
+        hyphenationFrequency = builder.hyphenationFrequency;
+        justificationMode = builder.justificationMode;
+        openSuffix = builder.openSuffix;
+        closeSuffix = builder.closeSuffix;
+        closeInNewLine = builder.closeInNewLine;
+        closeAlignRight = builder.closeAlignRight;
+        handleOnce = builder.handleOnce;
+        prefixThreshold = builder.prefixThreshold;
+        hashCode = computeHashCode();
+    }
+
+    private FoldConfig(FoldConfig other) {
+        paint = new TextPaint(other.paint);
+        contentWidth = other.contentWidth;
+        maxLines = other.maxLines;
+        lineSpacingExtra = other.lineSpacingExtra;
+        lineSpacingMultiplier = other.lineSpacingMultiplier;
+        includePad = other.includePad;
+        fallbackLineSpacing = other.fallbackLineSpacing;
+        breakStrategy = other.breakStrategy;
+        hyphenationFrequency = other.hyphenationFrequency;
+        justificationMode = other.justificationMode;
+        openSuffix = other.openSuffix;
+        closeSuffix = other.closeSuffix;
+        closeInNewLine = other.closeInNewLine;
+        closeAlignRight = other.closeAlignRight;
+        handleOnce = other.handleOnce;
+        prefixThreshold = other.prefixThreshold;
+        hashCode = other.hashCode;
+        fingerprint = other.fingerprint;
+    }
+
+    /**
+     * 复制一份使用独立画笔的配置，用于在多个线程中同时排版
+     */
+    FoldConfig copy() {
+        return new FoldConfig(this);
+    }
+
+    public int getContentWidth() {
+        return contentWidth;
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    /**
+     * 按当前配置创建StaticLayout
+     */
+    Layout createLayout(@NonNull CharSequence text) {
+        return createLayout(text, paint);
+    }
+
+    /**
+     * 按当前配置使用指定的画笔创建StaticLayout，画笔的测量属性需要与配置一致，用于绘制
+     */
+    Layout createLayout(@NonNull CharSequence text, @NonNull TextPaint paint) {
+        FoldStatistics.getInstance().countLayout();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            StaticLayout.Builder builder = StaticLayout.Builder.obtain(text, 0, text.length(), paint, contentWidth);
+            builder.setAlignment(Layout.Alignment.ALIGN_NORMAL);
+            builder.setIncludePad(includePad);
+            builder.setLineSpacing(lineSpacingExtra, lineSpacingMultiplier);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                builder.setUseLineSpacingFromFallbacks(fallbackLineSpacing);
+            }
+            builder.setBreakStrategy(breakStrategy);
+            builder.setHyphenationFrequency(hyphenationFrequency);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                builder.setJustificationMode(justificationMode);
+            }
+            return builder.build();
+        } else {
+            return new StaticLayout(text, paint, contentWidth, Layout.Alignment.ALIGN_NORMAL,
+                    lineSpacingMultiplier, lineSpacingExtra, includePad);
+        }
+    }
+
+    /**
+     * 按当前配置创建DynamicLayout，文本在末尾追加内容时只重新排版最后一段
+     */
+    @RequiresApi(Build.VERSION_CODES.P)
+    Layout createDynamicLayout(@NonNull CharSequence text) {
+        FoldStatistics.getInstance().countLayout();
+        return DynamicLayout.Builder.obtain(text, paint, contentWidth)
+                .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                .setIncludePad(includePad)
+                .setLineSpacing(lineSpacingExtra, lineSpacingMultiplier)
+                .setUseLineSpacingFromFallbacks(fallbackLineSpacing)
+                .setBreakStrategy(breakStrategy)
+                .setHyphenationFrequency(hyphenationFrequency)
+                .setJustificationMode(justificationMode)
+                .build();
+    }
+
+    /**
+     * 是否逐行贪心换行：每一行的换行位置只取决于这一行之前的内容，在末尾追加内容只会改变最后一行
+     * 控件的配置使用TextView的换行策略，默认为{@link Layout#BREAK_STRATEGY_HIGH_QUALITY}，需要设置为
+     * {@link Layout#BREAK_STRATEGY_SIMPLE}并关闭断字才会返回true
+     */
+    boolean isGreedyLineBreak() {
+        return breakStrategy == Layout.BREAK_STRATEGY_SIMPLE
+                && hyphenationFrequency == Layout.HYPHENATION_FREQUENCY_NONE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FoldConfig)) {
+            return false;
+        }
+        FoldConfig that = (FoldConfig) o;
+        return hashCode == that.hashCode
+                && contentWidth == that.contentWidth
+                && maxLines == that.maxLines
+                && Float.compare(lineSpacingExtra, that.lineSpacingExtra) == 0
+                && Float.compare(lineSpacingMultiplier, that.lineSpacingMultiplier) == 0
+                && includePad == that.includePad
+                && fallbackLineSpacing == that.fallbackLineSpacing
+                && breakStrategy == that.breakStrategy
+                && hyphenationFrequency == that.hyphenationFrequency
+                && justificationMode == that.justificationMode
+                && closeInNewLine == that.closeInNewLine
+                && closeAlignRight == that.closeAlignRight
+                && handleOnce == that.handleOnce
+                && prefixThreshold == that.prefixThreshold
+                && TextUtils.equals(openSuffix, that.openSuffix)
+                && TextUtils.equals(closeSuffix, that.closeSuffix)
+                && paintEquals(paint, that.paint);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    private int computeHashCode() {
+        int result = contentWidth;
+        result = 31 * result + maxLines;
+        result = 31 * result + Float.floatToIntBits(lineSpacingExtra);
+        result = 31 * result + Float.floatToIntBits(lineSpacingMultiplier);
+        result = 31 * result + (includePad ? 1 : 0);
+        result = 31 * result + (fallbackLineSpacing ? 1 : 0);
+        result = 31 * result + breakStrategy;
+        result = 31 * result + hyphenationFrequency;
+        result = 31 * result + justificationMode;
+        result = 31 * result + (openSuffix != null ? openSuffix.hashCode() : 0);
+        result = 31 * result + (closeSuffix != null ? closeSuffix.hashCode() : 0);
+        result = 31 * result + (closeInNewLine ? 1 : 0);
+        result = 31 * result + (closeAlignRight ? 1 : 0);
+        result = 31 * result + (handleOnce ? 1 : 0);
+        result = 31 * result + prefixThreshold;
+        result = 31 * result + paintHashCode(paint);
+        return result;
+    }
+
+    /**
+     * 预先计算的文本测量参数是否与当前配置一致，一致时排版可以直接使用其测量结果
+     */
+    boolean matchesMetrics(@NonNull TextPaint paint, int breakStrategy, int hyphenationFrequency) {
+        return this.breakStrategy == breakStrategy
+                && this.hyphenationFrequency == hyphenationFrequency
+                && paintEquals(this.paint, paint);
+    }
+
+    /**
+     * 在不同进程之间保持稳定的64位配置指纹，用于{@link FoldDiskCache}的键
+     * 与{@link #equals}比较相同的属性，字体只能按样式和粗细区分
+     */
+    long fingerprint() {
+        long result = fingerprint;
+        if (result == 0) {
+            result = FoldDiskCache.newHash();
+            result = FoldDiskCache.hash(result, contentWidth);
+            result = FoldDiskCache.hash(result, maxLines);
+            result = FoldDiskCache.hash(result, Float.floatToIntBits(lineSpacingExtra));
+            result = FoldDiskCache.hash(result, Float.floatToIntBits(lineSpacingMultiplier));
+            result = FoldDiskCache.hash(result, (includePad ? 1 : 0) | (fallbackLineSpacing ? 2 : 0)
+                    | (closeInNewLine ? 4 : 0) | (closeAlignRight ? 8 : 0) | (handleOnce ? 16 : 0));
+            result = FoldDiskCache.hash(result, breakStrategy);
+            result = FoldDiskCache.hash(result, hyphenationFrequency);
+            result = FoldDiskCache.hash(result, justificationMode);
+            result = FoldDiskCache.hash(result, prefixThreshold);
+            result = FoldDiskCache.hash(result, openSuffix);
+            result = FoldDiskCache.hash(result, closeSuffix);
+            result = paintFingerprint(result, paint);
+            if (result == 0) {
+                result = 1;
+            }
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * 比较影响文字测量的画笔属性，颜色等只影响绘制的属性不参与比较
+     */
+    private static boolean paintEquals(TextPaint a, TextPaint b) {
+        if (Float.compare(a.getTextSize(), b.getTextSize()) != 0
+                || Float.compare(a.getTextScaleX(), b.getTextScaleX()) != 0
+                || Float.compare(a.getTextSkewX(), b.getTextSkewX()) != 0
+                || Float.compare(a.getLetterSpacing(), b.getLetterSpacing()) != 0
+                || a.getFlags() != b.getFlags()
+                || !equalsObject(a.getTypeface(), b.getTypeface())
+                || !TextUtils.equals(a.getFontFeatureSettings(), b.getFontFeatureSettings())) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return equalsObject(a.getTextLocales(), b.getTextLocales());
+        }
+        return equalsObject(a.getTextLocale(), b.getTextLocale());
+    }
+
+    private static int paintHashCode(TextPaint paint) {
+        int result = Float.floatToIntBits(paint.getTextSize());
+        result = 31 * result + Float.floatToIntBits(paint.getTextScaleX());
+        result = 31 * result + Float.floatToIntBits(paint.getTextSkewX());
+        result = 31 * result + Float.floatToIntBits(paint.getLetterSpacing());
+        result = 31 * result + paint.getFlags();
+        Typeface typeface = paint.getTypeface();
+        result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+        String fontFeatureSettings = paint.getFontFeatureSettings();
+        result = 31 * result + (fontFeatureSettings != null ? fontFeatureSettings.hashCode() : 0);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            LocaleList locales = paint.getTextLocales();
+            result = 31 * result + (locales != null ? locales.hashCode() : 0);
+        } else {
+            Locale locale = paint.getTextLocale();
+            result = 31 * result + (locale != null ? locale.hashCode() : 0);
+        }
+        return result;
+    }
+
+    private static long paintFingerprint(long result, TextPaint paint) {
+        result = FoldDiskCache.hash(result, Float.floatToIntBits(paint.getTextSize()));
+        result = FoldDiskCache.hash(result, Float.floatToIntBits(paint.getTextScaleX()));
+        result = FoldDiskCache.hash(result, Float.floatToIntBits(paint.getTextSkewX()));
+        result = FoldDiskCache.hash(result, Float.floatToIntBits(paint.getLetterSpacing()));
+        result = FoldDiskCache.hash(result, paint.getFlags());
+        Typeface typeface = paint.getTypeface();
+        if (typeface == null) {
+            result = FoldDiskCache.hash(result, -1);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            result = FoldDiskCache.hash(result, ((long) typeface.getWeight() << 8) | typeface.getStyle());
+        } else {
+            result = FoldDiskCache.hash(result, typeface.getStyle());
+        }
+        result = FoldDiskCache.hash(result, paint.getFontFeatureSettings());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            LocaleList locales = paint.getTextLocales();
+            result = FoldDiskCache.hash(result, locales != null ? locales.toLanguageTags() : null);
+        } else {
+            Locale locale = paint.getTextLocale();
+            result = FoldDiskCache.hash(result, locale != null ? locale.toLanguageTag() : null);
+        }
+        return result;
+    }
+
+    private static boolean equalsObject(Object a, Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    public static final class Builder {
+        private final TextPaint paint;
+        private int contentWidth;
+        private int maxLines;
+        private float lineSpacingExtra = 0f;
+        private float lineSpacingMultiplier = 1f;
+        private boolean includePad = false;
+        private boolean fallbackLineSpacing = true;
+        // 只是直接使用Builder时的默认值，控件会传入TextView的换行策略（默认为HIGH_QUALITY）
+        private int breakStrategy = Layout.BREAK_STRATEGY_SIMPLE;
+        private int hyphenationFrequency = Layout.HYPHENATION_FREQUENCY_NONE;
+        private int justificationMode = 0;
+        private String openSuffix;
+        private String closeSuffix;
+        private boolean closeInNewLine = false;
+        private boolean closeAlignRight = false;
+        private boolean handleOnce = false;
+        private int prefixThreshold = 0;
+
+        /**
+         * @param paint        测量使用的画笔，构建时会复制一份
+         * @param contentWidth 文本可展示宽度，不包含padding
+         */
+        public Builder(@NonNull TextPaint paint, int contentWidth) {
+            this.paint = paint;
+            this.contentWidth = contentWidth;
+        }
+
+        Builder setContentWidth(int contentWidth) {
+            this.contentWidth = contentWidth;
+            return this;
+        }
+
+        public Builder setMaxLines(int maxLines) {
+            this.maxLines = maxLines;
+            return this;
+        }
+
+        public Builder setLineSpacing(float spacingExtra, float spacingMultiplier) {
+            this.lineSpacingExtra = spacingExtra;
+            this.lineSpacingMultiplier = spacingMultiplier;
+            return this;
+        }
+
+        public Builder setIncludePad(boolean includePad) {
+            this.includePad = includePad;
+            return this;
+        }
+
+        public Builder setFallbackLineSpacing(boolean fallbackLineSpacing) {
+            this.fallbackLineSpacing = fallbackLineSpacing;
+            return this;
+        }
+
+        public Builder setBreakStrategy(int breakStrategy) {
+            this.breakStrategy = breakStrategy;
+            return this;
+        }
+
+        public Builder setHyphenationFrequency(int hyphenationFrequency) {
+            this.hyphenationFrequency = hyphenationFrequency;
+            return this;
+        }
+
+        public Builder setJustificationMode(int justificationMode) {
+            this.justificationMode = justificationMode;
+            return this;
+        }
+
+        public Builder setOpenSuffix(String openSuffix) {
+            this.openSuffix = openSuffix;
+            return this;
+        }
+
+        public Builder setCloseSuffix(String closeSuffix) {
+            this.closeSuffix = closeSuffix;
+            return this;
+        }
+
+        public Builder setCloseInNewLine(boolean closeInNewLine) {
+            this.closeInNewLine = closeInNewLine;
+            return this;
+        }
+
+        public Builder setCloseAlignRight(boolean closeAlignRight) {
+            this.closeAlignRight = closeAlignRight;
+            return this;
+        }
+
+        /**
+         * 只对原文调用一次CharSequenceToSpannableHandler，收起的文本从处理结果中截取，
+         * 跨越截取位置的span会被截断保留
+         */
+        public Builder setHandleOnce(boolean handleOnce) {
+            this.handleOnce = handleOnce;
+            return this;
+        }
+
+        /**
+         * 原文长度超过threshold时只排版足够判断折叠的前缀，展开时再排版全文，为0时总是排版全文
+         */
+        public Builder setPrefixThreshold(int prefixThreshold) {
+            this.prefixThreshold = prefixThreshold;
+            return this;
+        }
+
+        public FoldConfig build() {
+            return new FoldConfig(this);
+        }
+
+        /**
+         * 与{@link FoldConfig#equals}比较相同的属性，不复制画笔，用于复用的Builder判断已有的配置是否仍然有效
+         */
+        boolean matches(@Nullable FoldConfig config) {
+            return config != null
+                    && contentWidth == config.contentWidth
+                    && maxLines == config.maxLines
+                    && Float.compare(lineSpacingExtra, config.lineSpacingExtra) == 0
+                    && Float.compare(lineSpacingMultiplier, config.lineSpacingMultiplier) == 0
+                    && includePad == config.includePad
+                    && fallbackLineSpacing == config.fallbackLineSpacing
+                    && breakStrategy == config.breakStrategy
+                    && hyphenationFrequency == config.hyphenationFrequency
+                    && justificationMode == config.justificationMode
+                    && closeInNewLine == config.closeInNewLine
+                    && closeAlignRight == config.closeAlignRight
+                    && handleOnce == config.handleOnce
+                    && prefixThreshold == config.prefixThreshold
+                    && TextUtils.equals(openSuffix, config.openSuffix)
+                    && TextUtils.equals(closeSuffix, config.closeSuffix)
+                    && paintEquals(paint, config.paint);
+        }
+    }
+}
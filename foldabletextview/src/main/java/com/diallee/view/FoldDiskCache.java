@@ -0,0 +1,350 @@
+package com.diallee.view;
+
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 持久化的折叠结果缓存，应用重新启动后首屏的文本不需要重新折叠
+ * 通过{@link FoldCache#setDiskCache(FoldDiskCache)}作为内存缓存的第二级使用
+ * <p>
+ * 文件由文件头和定长的记录组成，新的结果只追加写入，记录数超过上限的两倍时只保留最近使用的记录重写文件
+ * 文件头保存环境指纹（文件格式、系统版本和调用方提供的版本号），不一致时丢弃全部记录
+ * 记录按原文内容的64位哈希和排版配置的指纹查找，带span的原文不参与持久化
+ * 自定义字体只能按样式和粗细区分，更换字体文件时需要修改版本号
+ * <p>
+ * 文件的读写都在ioExecutor中执行，加载完成前查找总是未命中
+ */
+public final class FoldDiskCache {
+    private static final String TAG = FoldDiskCache.class.getSimpleName();
+    private static final int MAGIC = 0x466f6c64;
+    private static final int FORMAT_VERSION = 1;
+    // 文件头：magic + 格式版本 + 环境指纹
+    private static final int HEADER_BYTES = 16;
+    // 记录：内容哈希 + 配置指纹 + 截取位置 + 收起高度 + 展开高度 + 后缀空白 + 是否可展开 + 后缀位置 + 保留
+    private static final int RECORD_BYTES = 36;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final File file;
+    private final long environment;
+    private final int maxEntries;
+    private final Executor ioExecutor;
+    // 文件读写互斥
+    private final Object ioLock = new Object();
+
+    private final LinkedHashMap<RecordKey, FoldResult> map = new LinkedHashMap<>(0, 0.75f, true);
+    // 等待追加到文件的记录
+    private List<Record> pending = new ArrayList<>();
+    private boolean loaded;
+    private boolean flushScheduled;
+    // 文件中的记录数，包含被覆盖的旧记录，只在持有ioLock时读写
+    private int recordCount;
+
+    private final Runnable loadTask = new Runnable() {
+        @Override
+        public void run() {
+            load();
+        }
+    };
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * 创建后立即在ioExecutor中加载文件
+     *
+     * @param file       缓存文件，例如context.getCacheDir()下的文件
+     * @param version    调用方的版本号，例如应用的versionName，改变时丢弃全部记录
+     * @param maxEntries 保留的最大记录数
+     * @param ioExecutor 读写文件的线程池
+     */
+    public FoldDiskCache(@NonNull File file, @NonNull String version, int maxEntries,
+                         @NonNull Executor ioExecutor) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries <= 0");
+        }
+        this.file = file;
+        this.environment = hash(hash(hash(FNV_OFFSET, FORMAT_VERSION), Build.FINGERPRINT), version);
+        this.maxEntries = maxEntries;
+        this.ioExecutor = ioExecutor;
+        ioExecutor.execute(loadTask);
+    }
+
+    @Nullable
+    synchronized FoldResult get(long textHash, long fingerprint) {
+        return map.get(new RecordKey(textHash, fingerprint));
+    }
+
+    synchronized void put(long textHash, long fingerprint, @NonNull FoldResult result) {
+        RecordKey key = new RecordKey(textHash, fingerprint);
+        FoldResult previous = map.put(key, result);
+        if (previous != null && sameResult(previous, result)) {
+            return;
+        }
+        trimToSize();
+        pending.add(new Record(key, result));
+        scheduleFlush();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 清空缓存并删除文件
+     */
+    public void evictAll() {
+        synchronized (this) {
+            map.clear();
+            pending.clear();
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ioLock) {
+                    rewrite();
+                }
+            }
+        });
+    }
+
+    private void trimToSize() {
+        Iterator<RecordKey> iterator = map.keySet().iterator();
+        while (map.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (loaded && !flushScheduled && !pending.isEmpty()) {
+            flushScheduled = true;
+            ioExecutor.execute(flushTask);
+        }
+    }
+
+    private void load() {
+        synchronized (ioLock) {
+            LinkedHashMap<RecordKey, FoldResult> records = new LinkedHashMap<>();
+            int count = 0;
+            boolean valid = false;
+            if (file.exists() && file.length() >= HEADER_BYTES) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION && in.readLong() == environment) {
+                        valid = true;
+                        long total = (file.length() - HEADER_BYTES) / RECORD_BYTES;
+                        for (long i = 0; i < total; i++) {
+                            RecordKey key = new RecordKey(in.readLong(), in.readLong());
+                            // 相同的键以最后写入的为准，并移动到最近使用的位置
+                            records.remove(key);
+                            records.put(key, readResult(in));
+                            count++;
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "load " + file, e);
+                    valid = false;
+                }
+            }
+            synchronized (this) {
+                // 加载期间放入的结果比文件中的更新
+                records.putAll(map);
+                map.clear();
+                map.putAll(records);
+                trimToSize();
+                loaded = true;
+            }
+            recordCount = valid ? count : 0;
+            boolean aligned = (file.length() - HEADER_BYTES) % RECORD_BYTES == 0;
+            if (!valid || !aligned || count > maxEntries * 2) {
+                rewrite();
+            }
+        }
+        flush();
+    }
+
+    private void flush() {
+        synchronized (ioLock) {
+            List<Record> records;
+            synchronized (this) {
+                flushScheduled = false;
+                if (!loaded || pending.isEmpty()) {
+                    return;
+                }
+                records = pending;
+                pending = new ArrayList<>();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file, true)))) {
+                for (Record record : records) {
+                    writeRecord(out, record.key, record.result);
+                }
+                recordCount += records.size();
+            } catch (IOException e) {
+                Log.w(TAG, "append " + file, e);
+            }
+            if (recordCount > maxEntries * 2) {
+                rewrite();
+            }
+        }
+    }
+
+    /**
+     * 只写入内存中保留的记录，先写入临时文件再替换
+     */
+    private void rewrite() {
+        synchronized (ioLock) {
+            List<Record> records;
+            synchronized (this) {
+                records = new ArrayList<>(map.size());
+                for (Map.Entry<RecordKey, FoldResult> entry : map.entrySet()) {
+                    records.add(new Record(entry.getKey(), entry.getValue()));
+                }
+            }
+            File temp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(environment);
+                for (Record record : records) {
+                    writeRecord(out, record.key, record.result);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "rewrite " + file, e);
+                temp.delete();
+                return;
+            }
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "rename " + temp + " to " + file + " failed");
+                temp.delete();
+                return;
+            }
+            recordCount = records.size();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, RecordKey key, FoldResult result) throws IOException {
+        out.writeLong(key.textHash);
+        out.writeLong(key.fingerprint);
+        out.writeInt(result.closePosition);
+        out.writeInt(result.closeHeight);
+        out.writeInt(result.openHeight);
+        out.writeInt(result.closeSuffixGap);
+        out.writeByte(result.expandable ? 1 : 0);
+        out.writeByte(result.closeSuffixMode);
+        out.writeShort(0);
+    }
+
+    private static FoldResult readResult(DataInputStream in) throws IOException {
+        int closePosition = in.readInt();
+        int closeHeight = in.readInt();
+        int openHeight = in.readInt();
+        int closeSuffixGap = in.readInt();
+        boolean expandable = in.readByte() != 0;
+        int closeSuffixMode = in.readByte();
+        in.readShort();
+        if (!expandable) {
+            return FoldResult.NOT_EXPANDABLE;
+        }
+        return new FoldResult(true, closePosition, closeHeight, openHeight, closeSuffixMode, closeSuffixGap);
+    }
+
+    private static boolean sameResult(FoldResult a, FoldResult b) {
+        return a == b || (a.expandable == b.expandable && a.closePosition == b.closePosition
+                && a.closeHeight == b.closeHeight && a.openHeight == b.openHeight
+                && a.closeSuffixMode == b.closeSuffixMode && a.closeSuffixGap == b.closeSuffixGap);
+    }
+
+    /**
+     * 64位FNV-1a哈希，用于内容哈希和配置指纹，在不同进程之间保持稳定
+     */
+    static long hash(long hash, @Nullable CharSequence text) {
+        if (text == null) {
+            return hash(hash, -1);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash(hash, text.length());
+    }
+
+    static long hash(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    static long hashText(@NonNull CharSequence text) {
+        return hash(FNV_OFFSET, text);
+    }
+
+    static long newHash() {
+        return FNV_OFFSET;
+    }
+
+    private static final class RecordKey {
+        final long textHash;
+        final long fingerprint;
+
+        RecordKey(long textHash, long fingerprint) {
+            this.textHash = textHash;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey that = (RecordKey) o;
+            return textHash == that.textHash && fingerprint == that.fingerprint;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (textHash ^ (textHash >>> 32)) * 31 + (int) (fingerprint ^ (fingerprint >>> 32));
+        }
+    }
+
+    private static final class Record {
+        final RecordKey key;
+        final FoldResult result;
+
+        Record(RecordKey key, FoldResult result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.diallee.view;
+
+/**
+ * 折叠算法，只通过{@link Measurer}进行排版测量，不依赖Android的类，
+ * 可以在JVM上使用等宽的测量实现进行基准测试
+ */
+final class FoldEngine {
+
+    private FoldEngine() {
+    }
+
+    /**
+     * 排版结果，方法与{@link android.text.Layout}一致
+     */
+    interface Lines {
+        int getLineCount();
+
+        int getLineStart(int line);
+
+        int getLineEnd(int line);
+
+        int getHeight();
+
+        float getLineWidth(int line);
+
+        int getOffsetForHorizontal(int line, float horiz);
+    }
+
+    /**
+     * 对折叠过程中用到的几种文本进行排版测量
+     */
+    interface Measurer {
+        // 原文长度
+        int textLength();
+
+        // 不排版估算原文是否超过maxLines行，返回FoldMetrics.ESTIMATE_FITS、ESTIMATE_OVERFLOWS或ESTIMATE_UNCERTAIN
+        int estimate(int maxLines);
+
+        // 排版原文
+        Lines layoutText();
+
+        // 排版原文前end个字符
+        Lines layoutTextPrefix(int end);
+
+        // 估算一行大约能放下的字符数
+        int estimateLineLength();
+
+        // 是否逐行贪心换行，此时任意前缀的排版中除最后一行外都与全文相同
+        boolean isGreedyLineBreak();
+
+        // 原文中offset所在段落的结束位置（换行符之后），offset已经是段落开始或者没有换行符时分别返回offset和原文长度
+        int paragraphEnd(int offset);
+
+        // 排版原文前closePos个字符 + 省略号 + 展开后缀
+        Lines layoutCloseText(int closePos);
+
+        // 排版原文 + 宽度为gap的空白（gap为0时不插入） + 收起后缀
+        Lines layoutOpenText(int gap);
+
+        // 省略号 + 展开后缀的宽度
+        float closeSuffixWidth();
+
+        boolean hasCloseSuffix();
+    }
+
+    /**
+     * 计算折叠结果：是否可以展开、收起时的截取位置、两种状态的高度以及收起后缀的位置
+     *
+     * @param prefixThreshold 原文长度超过该值时只排版足够判断的前缀，收起后缀的位置推迟到展开时计算，为0时不启用
+     */
+    static FoldResult fold(Measurer measurer, int maxLines, int contentWidth,
+                           boolean closeInNewLine, boolean closeAlignRight, int prefixThreshold) {
+        if (maxLines <= 0) {
+            return FoldResult.NOT_EXPANDABLE;
+        }
+        int estimate = measurer.estimate(maxLines);
+        if (estimate == FoldMetrics.ESTIMATE_FITS) {
+            return FoldResult.NOT_EXPANDABLE;
+        }
+        Lines layout;
+        // 只排版了原文的前缀
+        boolean partial = false;
+        // 确定超过最大行数时不需要排版全文，只排版足够计算截取位置的前缀；
+        // 未启用前缀排版时只在结果与排版全文相同（收起后缀另起一行）时使用，
+        // 否则全文的排版会推迟到展开时在主线程进行
+        boolean usePrefix;
+        if (prefixThreshold > 0) {
+            usePrefix = estimate == FoldMetrics.ESTIMATE_OVERFLOWS || measurer.textLength() > prefixThreshold;
+        } else {
+            usePrefix = estimate == FoldMetrics.ESTIMATE_OVERFLOWS && measurer.hasCloseSuffix() && closeInNewLine;
+        }
+        if (usePrefix) {
+            layout = layoutPrefix(measurer, maxLines);
+            partial = layout.getLineEnd(layout.getLineCount() - 1) < measurer.textLength();
+        } else {
+            layout = measurer.layoutText();
+        }
+        if (layout.getLineCount() <= maxLines) {
+            return FoldResult.NOT_EXPANDABLE;
+        }
+        //计算原文截取位置
+        int endPos = Math.min(layout.getLineEnd(maxLines - 1), measurer.textLength());
+        //二分查找收起内容添加展开后缀后仍能放下的最长前缀
+        int closePos = findClosePosition(measurer, layout, maxLines, contentWidth, endPos);
+        //计算收起的文本高度
+        int closeHeight = measurer.layoutCloseText(closePos).getHeight();
+
+        if (partial && measurer.hasCloseSuffix() && !closeInNewLine) {
+            // 收起后缀是否放在最后一行需要排版全文，推迟到展开时计算
+            return new FoldResult(true, closePos, closeHeight, FoldResult.UNKNOWN_HEIGHT,
+                    FoldResult.CLOSE_SUFFIX_DEFERRED, 0);
+        }
+        return placeCloseSuffix(measurer, partial ? null : layout, closePos, closeHeight, contentWidth,
+                closeInNewLine, closeAlignRight);
+    }
+
+    /**
+     * 分页展开时计算下一页：排版lines行并在末尾放下省略号和展开后缀的截取位置
+     * 只排版足够判断的前缀，排版的长度与lines成正比，与原文的总长度无关
+     *
+     * @param measurer 从当前页最后一行的起始位置开始的文本
+     * @return 剩余的内容能在lines行内放下时返回null
+     */
+    static Page foldPage(Measurer measurer, int lines, int contentWidth) {
+        if (lines <= 0 || measurer.textLength() == 0) {
+            return null;
+        }
+        Lines layout = layoutPrefix(measurer, lines);
+        if (layout.getLineCount() <= lines) {
+            return null;
+        }
+        int endPos = Math.min(layout.getLineEnd(lines - 1), measurer.textLength());
+        int closePos = findClosePosition(measurer, layout, lines, contentWidth, endPos);
+        if (closePos == 0) {
+            // 放不下任何内容，无法继续分页
+            return null;
+        }
+        Lines closeLayout = measurer.layoutCloseText(closePos);
+        int lastLineStart = closeLayout.getLineStart(closeLayout.getLineCount() - 1);
+        return new Page(closePos, Math.min(lastLineStart, closePos), closeLayout.getHeight());
+    }
+
+    /**
+     * 逐步扩大排版的前缀，直到超过maxLines + 1行，保证第maxLines行不是前缀的最后一行；
+     * 原文不足时排版全文
+     * 贪心换行时前缀可以在任意位置截断；其他换行策略（默认的HIGH_QUALITY、断字）按整个段落决定换行位置，
+     * 截断段落会改变这一段中之前的行，因此前缀延长到段落结束，保证排版的行与全文相同
+     */
+    private static Lines layoutPrefix(Measurer measurer, int maxLines) {
+        boolean greedy = measurer.isGreedyLineBreak();
+        int end = Math.max(1, (maxLines + 2) * measurer.estimateLineLength());
+        while (true) {
+            end = Math.min(end, measurer.textLength());
+            if (!greedy) {
+                end = measurer.paragraphEnd(end);
+            }
+            Lines layout = measurer.layoutTextPrefix(end);
+            if (end == measurer.textLength() || layout.getLineCount() > maxLines + 1) {
+                return layout;
+            }
+            end *= 2;
+        }
+    }
+
+    /**
+     * 计算推迟的收起后缀位置和展开高度，需要排版全文
+     */
+    static FoldResult resolveDeferred(Measurer measurer, FoldResult result, int contentWidth,
+                                      boolean closeInNewLine, boolean closeAlignRight) {
+        if (result.closeSuffixMode != FoldResult.CLOSE_SUFFIX_DEFERRED) {
+            return result;
+        }
+        return placeCloseSuffix(measurer, measurer.layoutText(), result.closePosition, result.closeHeight,
+                contentWidth, closeInNewLine, closeAlignRight);
+    }
+
+    /**
+     * 计算收起后缀的位置和展开的高度
+     *
+     * @param layout 原文的排版，只排版了前缀时为null
+     */
+    private static FoldResult placeCloseSuffix(Measurer measurer, Lines layout, int closePos, int closeHeight,
+                                               int contentWidth, boolean closeInNewLine, boolean closeAlignRight) {
+        int closeSuffixMode = FoldResult.CLOSE_SUFFIX_NONE;
+        int closeSuffixGap = 0;
+        int openHeight = FoldResult.UNKNOWN_HEIGHT;
+        if (measurer.hasCloseSuffix()) {
+            if (closeInNewLine) {
+                closeSuffixMode = FoldResult.CLOSE_SUFFIX_NEW_LINE;
+            } else {
+                Lines openLayout = measurer.layoutOpenText(0);
+                if (openLayout.getLineCount() > layout.getLineCount()) {
+                    closeSuffixMode = FoldResult.CLOSE_SUFFIX_NEW_LINE;
+                } else {
+                    closeSuffixMode = FoldResult.CLOSE_SUFFIX_INLINE;
+                    openHeight = openLayout.getHeight();
+                    if (closeAlignRight) {
+                        closeSuffixGap = measureCloseSuffixGap(measurer, openLayout, contentWidth,
+                                layout.getLineCount());
+                    }
+                }
+            }
+        } else if (layout != null) {
+            openHeight = layout.getHeight();
+        }
+        return new FoldResult(true, closePos, closeHeight, openHeight, closeSuffixMode, closeSuffixGap);
+    }
+
+    /**
+     * 查找收起状态下原文的截取位置，即拼接省略号和展开后缀后不超过maxLines行的最长前缀长度
+     * 先根据后缀宽度在最后一行估算位置，再二分查找，排版次数为O(log n)
+     *
+     * @param layout 原文的排版
+     * @param endPos 第maxLines行结束的位置
+     */
+    private static int findClosePosition(Measurer measurer, Lines layout, int maxLines,
+                                         int contentWidth, int endPos) {
+        if (isCloseTextFit(measurer, maxLines, endPos)) {
+            return endPos;
+        }
+        int lastLine = maxLines - 1;
+        float suffixWidth = measurer.closeSuffixWidth();
+        int guess = layout.getOffsetForHorizontal(lastLine, Math.max(0, contentWidth - suffixWidth));
+        guess = Math.max(0, Math.min(guess, endPos - 1));
+        // low为可以放下的位置（为0时不再判断），high为放不下的位置
+        int low;
+        int high;
+        if (guess == 0 || isCloseTextFit(measurer, maxLines, guess)) {
+            low = guess;
+            high = endPos;
+        } else {
+            low = 0;
+            high = guess;
+            // 估算位置放不下时，先判断最后一行的起始位置以缩小查找范围
+            int lineStart = layout.getLineStart(lastLine);
+            if (lineStart > 0 && lineStart < guess) {
+                if (isCloseTextFit(measurer, maxLines, lineStart)) {
+                    low = lineStart;
+                } else {
+                    high = lineStart;
+                }
+            }
+        }
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (isCloseTextFit(measurer, maxLines, mid)) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isCloseTextFit(Measurer measurer, int maxLines, int closePos) {
+        return measurer.layoutCloseText(closePos).getLineCount() <= maxLines;
+    }
+
+    /**
+     * 计算收起后缀右对齐时需要在其前面插入的空白宽度，即最后一行剩余的宽度
+     * 最多额外排版一次用于校验，插入后行数增加则不再对齐
+     *
+     * @param openLayout 原文追加收起后缀的排版
+     * @param lineCount  原文的行数
+     */
+    private static int measureCloseSuffixGap(Measurer measurer, Lines openLayout, int contentWidth,
+                                             int lineCount) {
+        int lastLine = openLayout.getLineCount() - 1;
+        int gap = (int) Math.floor(contentWidth - openLayout.getLineWidth(lastLine));
+        if (gap <= 0) {
+            return 0;
+        }
+        if (measurer.layoutOpenText(gap).getLineCount() > lineCount) {
+            return 0;
+        }
+        return gap;
+    }
+
+    /**
+     * 分页展开的一页，位置都相对于{@link #foldPage}中measurer的文本
+     */
+    static final class Page {
+        // 截取位置，之后拼接省略号和展开后缀
+        final int closePosition;
+        // 这一页最后一行的起始位置，即下一页开始排版的位置
+        final int lastLineStart;
+        // 截取后的文本拼接后缀的高度
+        final int height;
+
+        Page(int closePosition, int lastLineStart, int height) {
+            this.closePosition = closePosition;
+            this.lastLineStart = lastLineStart;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.diallee.view;
+
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.style.MetricAffectingSpan;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 不排版估算原文是否超过最大行数，只使用硬换行的数量和画笔测量的不换行宽度：
+ * 每一段都能放在一行内且段落数不超过最大行数时一定放得下；
+ * 每一段按内容宽度至少需要的行数之和超过最大行数时一定放不下；介于两者之间时需要排版确定
+ * 测量在超过最大行数后停止，耗时与最大行数成正比，与原文的总长度无关
+ */
+final class FoldEstimator {
+    // 分段测量的长度，超过最大行数后不再测量之后的内容
+    private static final int CHUNK_LENGTH = 256;
+
+    private FoldEstimator() {
+    }
+
+    /**
+     * @return {@link FoldMetrics#ESTIMATE_FITS}、{@link FoldMetrics#ESTIMATE_OVERFLOWS}或{@link FoldMetrics#ESTIMATE_UNCERTAIN}
+     */
+    static int estimate(@NonNull CharSequence text, int start, int end, @NonNull FoldConfig config, int maxLines) {
+        // 每个硬换行至少占一行，不需要测量
+        int hardLines = 1;
+        boolean unmeasurable = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                if (++hardLines > maxLines) {
+                    return FoldMetrics.ESTIMATE_OVERFLOWS;
+                }
+            } else if (c == '\t' || (c != ' ' && isLineEndSpace(c))) {
+                unmeasurable = true;
+            }
+        }
+        TextPaint paint = config.paint;
+        // 分段测量与StaticLayout的测量之间存在字距等误差，每段按一个字号的宽度留出余量
+        float slack = paint.getTextSize();
+        // 制表符按制表位排版，除空格外的行尾空白不计入行宽，影响宽度的span无法用画笔测量，
+        // 内容宽度过窄时单个字符就可能超出一行
+        if (unmeasurable || config.contentWidth < slack * 2 || hasMetricAffectingSpan(text, start, end)) {
+            return FoldMetrics.ESTIMATE_UNCERTAIN;
+        }
+        float spaceWidth = paint.measureText(" ");
+        boolean fits = true;
+        int minLines = 0;
+        int paragraphStart = start;
+        while (true) {
+            int paragraphEnd = paragraphStart;
+            while (paragraphEnd < end && text.charAt(paragraphEnd) != '\n') {
+                paragraphEnd++;
+            }
+            float width = 0;
+            // 行尾的空格不计入行宽，计算最少行数时减去全部空格的宽度
+            float spacesWidth = 0;
+            float error = 0;
+            int paragraphLines = 1;
+            for (int chunkStart = paragraphStart; chunkStart < paragraphEnd; ) {
+                int chunkEnd = Math.min(chunkStart + CHUNK_LENGTH, paragraphEnd);
+                if (chunkEnd < paragraphEnd && Character.isHighSurrogate(text.charAt(chunkEnd - 1))) {
+                    chunkEnd--;
+                }
+                width += paint.measureText(text, chunkStart, chunkEnd);
+                for (int i = chunkStart; i < chunkEnd; i++) {
+                    if (text.charAt(i) == ' ') {
+                        spacesWidth += spaceWidth;
+                    }
+                }
+                error += slack;
+                chunkStart = chunkEnd;
+                if (width + slack > config.contentWidth) {
+                    fits = false;
+                }
+                paragraphLines = Math.max(1, (int) Math.ceil((width - spacesWidth - error) / config.contentWidth));
+                if (minLines + paragraphLines > maxLines) {
+                    return FoldMetrics.ESTIMATE_OVERFLOWS;
+                }
+            }
+            minLines += paragraphLines;
+            if (paragraphEnd >= end) {
+                break;
+            }
+            paragraphStart = paragraphEnd + 1;
+        }
+        return fits ? FoldMetrics.ESTIMATE_FITS : FoldMetrics.ESTIMATE_UNCERTAIN;
+    }
+
+    private static boolean hasMetricAffectingSpan(CharSequence text, int start, int end) {
+        return text instanceof Spanned
+                && ((Spanned) text).getSpans(start, end, MetricAffectingSpan.class).length > 0;
+    }
+
+    /**
+     * 排版时挂在行尾、不计入行宽的空白字符
+     */
+    private static boolean isLineEndSpace(char c) {
+        return c == ' ' || c == '\u1680' || ('\u2000' <= c && c <= '\u200A' && c != '\u2007')
+                || c == '\u205F' || c == '\u3000';
+    }
+}
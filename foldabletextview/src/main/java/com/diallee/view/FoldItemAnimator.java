@@ -0,0 +1,193 @@
+package com.diallee.view;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DefaultItemAnimator;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在RecyclerView中展开和收起FoldableTextView：条目通过局部刷新只布局一次，不再每一帧修改LayoutParams
+ * 展开的条目直接按折叠时计算好的高度布局，动画期间只修改自身的裁剪区域，下方的条目由移动动画平移
+ * 同一帧内切换多个条目只触发一次布局
+ * <p>
+ * 使用方式：
+ * <pre>
+ * recyclerView.setItemAnimator(new FoldItemAnimator());
+ * foldableTextView.setToggleHandler(FoldItemAnimator.TOGGLE_HANDLER);
+ * </pre>
+ * 收到{@link #PAYLOAD_TOGGLE}的onBindViewHolder不需要重新绑定文本
+ */
+public class FoldItemAnimator extends DefaultItemAnimator {
+    /**
+     * 切换展开和收起状态的局部刷新
+     */
+    public static final Object PAYLOAD_TOGGLE = new Object();
+
+    /**
+     * 控件所在的RecyclerView使用FoldItemAnimator时，直接切换状态并局部刷新条目
+     */
+    public static final FoldableTextView.ToggleHandler TOGGLE_HANDLER = new FoldableTextView.ToggleHandler() {
+        @Override
+        public boolean onToggle(@NonNull FoldableTextView view, boolean expand) {
+            return toggle(view, expand);
+        }
+    };
+
+    private final List<HeightChange> mPendingChanges = new ArrayList<>();
+    private final Map<RecyclerView.ViewHolder, ValueAnimator> mRunningChanges = new HashMap<>();
+
+    /**
+     * 切换控件的状态并局部刷新所在的条目
+     *
+     * @return 控件不在使用FoldItemAnimator的RecyclerView中或者状态没有改变时返回false，此时不刷新条目
+     */
+    public static boolean toggle(@NonNull FoldableTextView view, boolean expand) {
+        RecyclerView recyclerView = findRecyclerView(view);
+        if (recyclerView == null || !(recyclerView.getItemAnimator() instanceof FoldItemAnimator)
+                || recyclerView.getAdapter() == null) {
+            return false;
+        }
+        RecyclerView.ViewHolder holder = recyclerView.findContainingViewHolder(view);
+        if (holder == null || holder.getAdapterPosition() == RecyclerView.NO_POSITION) {
+            return false;
+        }
+        // 布局前记录的是条目原来的位置，切换状态后只在下一次布局中测量一次
+        if (!view.setExpanded(expand)) {
+            return false;
+        }
+        recyclerView.getAdapter().notifyItemChanged(holder.getAdapterPosition(), PAYLOAD_TOGGLE);
+        return true;
+    }
+
+    private static RecyclerView findRecyclerView(View view) {
+        ViewParent parent = view.getParent();
+        while (parent != null && !(parent instanceof RecyclerView)) {
+            parent = parent.getParent();
+        }
+        return (RecyclerView) parent;
+    }
+
+    @Override
+    public boolean canReuseUpdatedViewHolder(@NonNull RecyclerView.ViewHolder viewHolder,
+                                             @NonNull List<Object> payloads) {
+        return payloads.contains(PAYLOAD_TOGGLE) || super.canReuseUpdatedViewHolder(viewHolder, payloads);
+    }
+
+    @Override
+    public boolean animateChange(@NonNull RecyclerView.ViewHolder oldHolder, @NonNull RecyclerView.ViewHolder newHolder,
+                                 @NonNull ItemHolderInfo preInfo, @NonNull ItemHolderInfo postInfo) {
+        int oldHeight = preInfo.bottom - preInfo.top;
+        int newHeight = postInfo.bottom - postInfo.top;
+        // 收起时条目已经是收起的高度，只需要下方的条目平移
+        if (oldHolder != newHolder || newHeight <= oldHeight) {
+            return super.animateChange(oldHolder, newHolder, preInfo, postInfo);
+        }
+        endAnimation(newHolder);
+        View itemView = newHolder.itemView;
+        itemView.setTranslationY(preInfo.top - postInfo.top);
+        itemView.setClipBounds(new Rect(0, 0, itemView.getWidth(), oldHeight));
+        mPendingChanges.add(new HeightChange(newHolder, oldHeight, newHeight));
+        return true;
+    }
+
+    @Override
+    public void runPendingAnimations() {
+        super.runPendingAnimations();
+        for (HeightChange change : mPendingChanges) {
+            startHeightChange(change);
+        }
+        mPendingChanges.clear();
+    }
+
+    private void startHeightChange(final HeightChange change) {
+        final View itemView = change.holder.itemView;
+        final Rect clipBounds = new Rect(0, 0, itemView.getWidth(), change.fromHeight);
+        final float fromTranslation = itemView.getTranslationY();
+        ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+        animator.setDuration(getMoveDuration());
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                float fraction = (float) animation.getAnimatedValue();
+                clipBounds.bottom = (int) (change.fromHeight + (change.toHeight - change.fromHeight) * fraction);
+                itemView.setClipBounds(clipBounds);
+                itemView.setTranslationY(fromTranslation * (1 - fraction));
+            }
+        });
+        animator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                itemView.setClipBounds(null);
+                itemView.setTranslationY(0);
+                mRunningChanges.remove(change.holder);
+                dispatchChangeFinished(change.holder, true);
+                if (!isRunning()) {
+                    dispatchAnimationsFinished();
+                }
+            }
+        });
+        mRunningChanges.put(change.holder, animator);
+        dispatchChangeStarting(change.holder, true);
+        animator.start();
+    }
+
+    @Override
+    public void endAnimation(@NonNull RecyclerView.ViewHolder item) {
+        for (int i = mPendingChanges.size() - 1; i >= 0; i--) {
+            if (mPendingChanges.get(i).holder == item) {
+                mPendingChanges.remove(i);
+                item.itemView.setClipBounds(null);
+                item.itemView.setTranslationY(0);
+                dispatchChangeFinished(item, true);
+            }
+        }
+        ValueAnimator animator = mRunningChanges.get(item);
+        if (animator != null) {
+            // 结束时回调中移除并通知动画完成
+            animator.end();
+        }
+        super.endAnimation(item);
+    }
+
+    @Override
+    public void endAnimations() {
+        for (HeightChange change : mPendingChanges) {
+            change.holder.itemView.setClipBounds(null);
+            change.holder.itemView.setTranslationY(0);
+            dispatchChangeFinished(change.holder, true);
+        }
+        mPendingChanges.clear();
+        for (ValueAnimator animator : new ArrayList<>(mRunningChanges.values())) {
+            animator.end();
+        }
+        super.endAnimations();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return !mPendingChanges.isEmpty() || !mRunningChanges.isEmpty() || super.isRunning();
+    }
+
+    private static final class HeightChange {
+        final RecyclerView.ViewHolder holder;
+        final int fromHeight;
+        final int toHeight;
+
+        HeightChange(RecyclerView.ViewHolder holder, int fromHeight, int toHeight) {
+            this.holder = holder;
+            this.fromHeight = fromHeight;
+            this.toHeight = toHeight;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.diallee.view;
+
+/**
+ * 单次折叠计算的统计数据，通过{@link FoldableTextView.FoldMetricsListener}回调
+ */
+public final class FoldMetrics {
+    // 未使用缓存
+    public static final int CACHE_DISABLED = 0;
+    public static final int CACHE_HIT = 1;
+    public static final int CACHE_MISS = 2;
+
+    // 没有进行估算，例如命中了缓存
+    public static final int ESTIMATE_NONE = 0;
+    // 不排版就确定原文能在最大行数内放下，跳过了排版
+    public static final int ESTIMATE_FITS = 1;
+    // 不排版就确定原文超过最大行数，只排版了足够计算截取位置的前缀
+    public static final int ESTIMATE_OVERFLOWS = 2;
+    // 估算无法确定，排版全文
+    public static final int ESTIMATE_UNCERTAIN = 3;
+
+    final long startNanos;
+    long wallTimeNanos;
+    int layoutCount;
+    int handlerCount;
+    int textLength;
+    int cacheState = CACHE_DISABLED;
+    int estimate = ESTIMATE_NONE;
+    boolean async;
+
+    FoldMetrics(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * 折叠的耗时，异步模式下包含等待执行和等待下一帧的时间
+     */
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    /**
+     * 创建StaticLayout的次数
+     */
+    public int getLayoutCount() {
+        return layoutCount;
+    }
+
+    /**
+     * 调用CharSequenceToSpannableHandler的次数
+     */
+    public int getHandlerCount() {
+        return handlerCount;
+    }
+
+    public int getTextLength() {
+        return textLength;
+    }
+
+    /**
+     * @return {@link #CACHE_DISABLED}、{@link #CACHE_HIT}或{@link #CACHE_MISS}
+     */
+    public int getCacheState() {
+        return cacheState;
+    }
+
+    /**
+     * @return {@link #ESTIMATE_NONE}、{@link #ESTIMATE_FITS}、{@link #ESTIMATE_OVERFLOWS}或{@link #ESTIMATE_UNCERTAIN}
+     */
+    public int getEstimate() {
+        return estimate;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    @Override
+    public String toString() {
+        return "FoldMetrics{wallTimeNanos=" + wallTimeNanos
+                + ", layoutCount=" + layoutCount
+                + ", handlerCount=" + handlerCount
+                + ", textLength=" + textLength
+                + ", cacheState=" + cacheState
+                + ", estimate=" + estimate
+                + ", async=" + async + '}';
+    }
+}
@@ -0,0 +1,69 @@
+package com.diallee.view;
+
+/**
+ * 折叠计算的结果，不持有任何文本和布局对象，可以在不同的View之间复用
+ * 可以通过{@link FoldableTextView#setFoldedText(CharSequence, FoldResult)}直接应用到控件
+ */
+public final class FoldResult {
+    // 不追加收起后缀
+    static final int CLOSE_SUFFIX_NONE = 0;
+    // 收起后缀追加在原文最后一行
+    static final int CLOSE_SUFFIX_INLINE = 1;
+    // 收起后缀另起一行
+    static final int CLOSE_SUFFIX_NEW_LINE = 2;
+    // 只排版了原文的前缀，收起后缀的位置推迟到展开时计算
+    static final int CLOSE_SUFFIX_DEFERRED = 3;
+
+    // 高度未知，需要时再测量
+    static final int UNKNOWN_HEIGHT = -1;
+
+    static final FoldResult NOT_EXPANDABLE = new FoldResult(false, 0, UNKNOWN_HEIGHT,
+            UNKNOWN_HEIGHT, CLOSE_SUFFIX_NONE, 0);
+
+    // 是否超过最大行数，需要展开和收起
+    final boolean expandable;
+    // 收起状态下原文的截取位置
+    final int closePosition;
+    // 收起状态的文本高度，不包含padding
+    final int closeHeight;
+    // 展开状态的文本高度，不包含padding
+    final int openHeight;
+    // 收起后缀的位置
+    final int closeSuffixMode;
+    // 收起后缀右对齐时在其前面插入的空白宽度
+    final int closeSuffixGap;
+
+    FoldResult(boolean expandable, int closePosition, int closeHeight, int openHeight,
+               int closeSuffixMode, int closeSuffixGap) {
+        this.expandable = expandable;
+        this.closePosition = closePosition;
+        this.closeHeight = closeHeight;
+        this.openHeight = openHeight;
+        this.closeSuffixMode = closeSuffixMode;
+        this.closeSuffixGap = closeSuffixGap;
+    }
+
+    /**
+     * 原文在末尾追加内容后的折叠结果：收起状态不变，收起后缀的位置和展开的高度在展开时重新计算
+     */
+    FoldResult forAppendedText() {
+        int mode = closeSuffixMode == CLOSE_SUFFIX_INLINE ? CLOSE_SUFFIX_DEFERRED : closeSuffixMode;
+        return new FoldResult(expandable, closePosition, closeHeight, UNKNOWN_HEIGHT, mode, 0);
+    }
+
+    public boolean isExpandable() {
+        return expandable;
+    }
+
+    public int getClosePosition() {
+        return closePosition;
+    }
+
+    public int getCloseHeight() {
+        return closeHeight;
+    }
+
+    public int getOpenHeight() {
+        return openHeight;
+    }
+}
@@ -0,0 +1,80 @@
+package com.diallee.view;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按条目id保存展开和收起状态，RecyclerView复用控件后可以直接恢复状态，不需要重新测量和执行动画
+ * 条目数超过上限时淘汰最久没有访问的条目
+ */
+public final class FoldStateStore {
+    // 按访问顺序排列，加入新条目后超过上限时移除最久没有访问的条目
+    private final LinkedHashMap<Long, Entry> mEntries;
+
+    public FoldStateStore(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mEntries = new LinkedHashMap<Long, Entry>(Math.min(maxSize, 64), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Nullable
+    Entry get(long id) {
+        return mEntries.get(id);
+    }
+
+    void put(long id, @NonNull Entry entry) {
+        mEntries.put(id, entry);
+    }
+
+    /**
+     * 条目是否处于展开状态
+     */
+    public boolean isExpanded(long id) {
+        Entry entry = mEntries.get(id);
+        return entry != null && entry.expanded;
+    }
+
+    public void remove(long id) {
+        mEntries.remove(id);
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    static final class Entry {
+        // 文本的长度和hash以及排版配置的hash，不一致时状态失效
+        final int textLength;
+        final int textHash;
+        final int configHash;
+        final FoldResult result;
+        // 包含padding的收起和展开高度
+        final int closeHeight;
+        final int openHeight;
+        final boolean expanded;
+
+        Entry(int textLength, int textHash, int configHash, FoldResult result, int closeHeight, int openHeight,
+              boolean expanded) {
+            this.textLength = textLength;
+            this.textHash = textHash;
+            this.configHash = configHash;
+            this.result = result;
+            this.closeHeight = closeHeight;
+            this.openHeight = openHeight;
+            this.expanded = expanded;
+        }
+    }
+}
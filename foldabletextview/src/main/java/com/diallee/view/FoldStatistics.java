@@ -0,0 +1,282 @@
+package com.diallee.view;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 全局的折叠耗时统计，按控件类型分别记录耗时直方图，用于统计p50、p99等分位数
+ * 同时累计所有控件创建StaticLayout、调用CharSequenceToSpannableHandler、创建SpannableStringBuilder和requestLayout的次数，
+ * 测试中可以在每个场景前{@link #reset()}，结束后检查这些次数是否超出预算
+ * 默认关闭，通过{@link #setEnabled(boolean)}开启
+ */
+public final class FoldStatistics {
+    // 每个2的幂次区间再分为4个桶，覆盖1微秒到2^32微秒
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKET_COUNT = 32 * SUB_BUCKETS;
+
+    private static final FoldStatistics sInstance = new FoldStatistics();
+
+    private volatile boolean enabled = false;
+    private final Map<Class<?>, Histogram> histograms = new HashMap<>();
+    private long totalLayoutCount;
+    private long totalHandlerCount;
+    private long totalSpannableCount;
+    private long totalRequestLayoutCount;
+    private long precomputedHitCount;
+    private long precomputedMissCount;
+    private long estimateFitsCount;
+    private long estimateOverflowsCount;
+    private long estimateUncertainCount;
+
+    private FoldStatistics() {
+    }
+
+    @NonNull
+    public static FoldStatistics getInstance() {
+        return sInstance;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized void record(@NonNull Class<?> viewClass, @NonNull FoldMetrics metrics) {
+        Histogram histogram = histograms.get(viewClass);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(viewClass, histogram);
+        }
+        histogram.record(metrics);
+    }
+
+    void countLayout() {
+        if (enabled) {
+            synchronized (this) {
+                totalLayoutCount++;
+            }
+        }
+    }
+
+    void countHandler() {
+        if (enabled) {
+            synchronized (this) {
+                totalHandlerCount++;
+            }
+        }
+    }
+
+    void countSpannable() {
+        if (enabled) {
+            synchronized (this) {
+                totalSpannableCount++;
+            }
+        }
+    }
+
+    void countRequestLayout() {
+        if (enabled) {
+            synchronized (this) {
+                totalRequestLayoutCount++;
+            }
+        }
+    }
+
+    void countPrecomputedHit() {
+        if (enabled) {
+            synchronized (this) {
+                precomputedHitCount++;
+            }
+        }
+    }
+
+    void countPrecomputedMiss() {
+        if (enabled) {
+            synchronized (this) {
+                precomputedMissCount++;
+            }
+        }
+    }
+
+    void countEstimate(int estimate) {
+        if (enabled) {
+            synchronized (this) {
+                if (estimate == FoldMetrics.ESTIMATE_FITS) {
+                    estimateFitsCount++;
+                } else if (estimate == FoldMetrics.ESTIMATE_OVERFLOWS) {
+                    estimateOverflowsCount++;
+                } else {
+                    estimateUncertainCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取指定控件类型折叠耗时的分位数，返回所在桶的上界
+     *
+     * @param viewClass  控件类型
+     * @param percentile 分位数，取值0到100
+     * @return 耗时，单位微秒，没有记录时返回0
+     */
+    public synchronized long getPercentileMicros(@NonNull Class<?> viewClass, double percentile) {
+        Histogram histogram = histograms.get(viewClass);
+        return histogram != null ? histogram.percentile(percentile) : 0;
+    }
+
+    /**
+     * 折叠次数
+     */
+    public synchronized long getCount(@NonNull Class<?> viewClass) {
+        Histogram histogram = histograms.get(viewClass);
+        return histogram != null ? histogram.count : 0;
+    }
+
+    /**
+     * 命中缓存的次数
+     */
+    public synchronized long getCacheHitCount(@NonNull Class<?> viewClass) {
+        Histogram histogram = histograms.get(viewClass);
+        return histogram != null ? histogram.cacheHitCount : 0;
+    }
+
+    /**
+     * 创建StaticLayout的总次数
+     */
+    public synchronized long getLayoutCount(@NonNull Class<?> viewClass) {
+        Histogram histogram = histograms.get(viewClass);
+        return histogram != null ? histogram.layoutCount : 0;
+    }
+
+    /**
+     * 所有控件创建StaticLayout的次数，包含折叠、展开时的测量和绘制
+     */
+    public synchronized long getTotalLayoutCount() {
+        return totalLayoutCount;
+    }
+
+    /**
+     * 所有控件调用CharSequenceToSpannableHandler的次数
+     */
+    public synchronized long getTotalHandlerCount() {
+        return totalHandlerCount;
+    }
+
+    /**
+     * 折叠过程中创建SpannableStringBuilder的次数，不包含CharSequenceToSpannableHandler内部创建的
+     */
+    public synchronized long getTotalSpannableCount() {
+        return totalSpannableCount;
+    }
+
+    /**
+     * 所有FoldableTextView调用requestLayout的次数
+     */
+    public synchronized long getTotalRequestLayoutCount() {
+        return totalRequestLayoutCount;
+    }
+
+    /**
+     * 预先计算的文本复用了测量结果的次数
+     */
+    public synchronized long getPrecomputedHitCount() {
+        return precomputedHitCount;
+    }
+
+    /**
+     * 预先计算的文本因为测量参数与控件不一致或系统版本过低而重新测量的次数
+     */
+    public synchronized long getPrecomputedMissCount() {
+        return precomputedMissCount;
+    }
+
+    /**
+     * 不排版就确定原文能放下，跳过排版的次数
+     */
+    public synchronized long getEstimateFitsCount() {
+        return estimateFitsCount;
+    }
+
+    /**
+     * 不排版就确定原文超过最大行数，只排版前缀的次数
+     */
+    public synchronized long getEstimateOverflowsCount() {
+        return estimateOverflowsCount;
+    }
+
+    /**
+     * 估算无法确定，排版全文的次数
+     */
+    public synchronized long getEstimateUncertainCount() {
+        return estimateUncertainCount;
+    }
+
+    /**
+     * 估算能够确定结果、不需要排版全文的比例，没有估算时返回0
+     */
+    public synchronized double getEstimateSkipRate() {
+        long total = estimateFitsCount + estimateOverflowsCount + estimateUncertainCount;
+        return total > 0 ? (double) (estimateFitsCount + estimateOverflowsCount) / total : 0;
+    }
+
+    public synchronized void reset() {
+        histograms.clear();
+        totalLayoutCount = 0;
+        totalHandlerCount = 0;
+        totalSpannableCount = 0;
+        totalRequestLayoutCount = 0;
+        precomputedHitCount = 0;
+        precomputedMissCount = 0;
+        estimateFitsCount = 0;
+        estimateOverflowsCount = 0;
+        estimateUncertainCount = 0;
+    }
+
+    private static final class Histogram {
+        final long[] buckets = new long[BUCKET_COUNT];
+        long count;
+        long cacheHitCount;
+        long layoutCount;
+
+        void record(FoldMetrics metrics) {
+            buckets[bucketOf(metrics.wallTimeNanos / 1000)]++;
+            count++;
+            layoutCount += metrics.layoutCount;
+            if (metrics.cacheState == FoldMetrics.CACHE_HIT) {
+                cacheHitCount++;
+            }
+        }
+
+        long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0) {
+                    return upperBoundOf(i);
+                }
+            }
+            return upperBoundOf(BUCKET_COUNT - 1);
+        }
+
+        private static int bucketOf(long micros) {
+            if (micros <= 1) {
+                return 0;
+            }
+            int bucket = (int) (Math.log(micros) / Math.log(2) * SUB_BUCKETS);
+            return Math.min(bucket, BUCKET_COUNT - 1);
+        }
+
+        private static long upperBoundOf(int bucket) {
+            return (long) Math.ceil(Math.pow(2, (bucket + 1) / (double) SUB_BUCKETS));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.diallee.view;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 当前文本在少数几个宽度下的折叠结果，旋转屏幕、分屏或展开折叠屏后宽度回到已知的值时直接使用，不需要重新排版
+ * 按排版配置查找，超过容量时替换最久未使用的宽度，只在主线程中使用
+ */
+final class FoldWidthBuckets {
+    private final FoldConfig[] configs;
+    private final FoldResult[] results;
+    // 最近使用的序号，用于替换最久未使用的宽度
+    private final long[] useStamps;
+    private long stamp;
+
+    FoldWidthBuckets(int capacity) {
+        configs = new FoldConfig[capacity];
+        results = new FoldResult[capacity];
+        useStamps = new long[capacity];
+    }
+
+    @Nullable
+    FoldResult get(@NonNull FoldConfig config) {
+        int index = indexOf(config);
+        if (index < 0) {
+            return null;
+        }
+        useStamps[index] = ++stamp;
+        return results[index];
+    }
+
+    boolean contains(@NonNull FoldConfig config) {
+        return indexOf(config) >= 0;
+    }
+
+    void put(@NonNull FoldConfig config, @NonNull FoldResult result) {
+        int index = indexOf(config);
+        if (index < 0) {
+            index = 0;
+            for (int i = 1; i < configs.length; i++) {
+                if (useStamps[i] < useStamps[index]) {
+                    index = i;
+                }
+            }
+            configs[index] = config;
+        }
+        results[index] = result;
+        useStamps[index] = ++stamp;
+    }
+
+    void clear() {
+        for (int i = 0; i < configs.length; i++) {
+            configs[i] = null;
+            results[i] = null;
+            useStamps[i] = 0;
+        }
+    }
+
+    private int indexOf(FoldConfig config) {
+        for (int i = 0; i < configs.length; i++) {
+            if (configs[i] != null && configs[i].equals(config)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
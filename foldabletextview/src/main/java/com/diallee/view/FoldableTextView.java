@@ -2,20 +2,27 @@ package com.diallee.view;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.text.Editable;
 import android.text.Layout;
-import android.text.SpannableString;
+import android.text.PrecomputedText;
+import android.text.Spannable;
 import android.text.SpannableStringBuilder;
 import android.text.Spanned;
-import android.text.StaticLayout;
 import android.text.TextPaint;
 import android.text.TextUtils;
-import android.text.style.AlignmentSpan;
 import android.text.style.ClickableSpan;
-import android.text.style.StyleSpan;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.animation.Animation;
 import android.view.animation.Transformation;
 
@@ -23,9 +30,15 @@ import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
 
 import com.diallee.foldabletextview.example.R;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 public class FoldableTextView extends AppCompatTextView {
     private static final String TAG = FoldableTextView.class.getSimpleName();
     // 省略号
@@ -35,6 +48,15 @@ public class FoldableTextView extends AppCompatTextView {
     // 默认展开和收起的文字标识
     private static final String DEFAULT_OPEN_SUFFIX = "展开";
     private static final String DEFAULT_CLOSE_SUFFIX = "收起";
+    // 动画方式：修改高度并重新布局，或者只修改裁剪区域
+    public static final int ANIMATION_MODE_LAYOUT = 0;
+    public static final int ANIMATION_MODE_CLIP = 1;
+    // 系统trace中的区段名称
+    private static final String TRACE_FOLD = "FoldableTextView#fold";
+    private static final String TRACE_CACHE = "FoldableTextView#cache";
+    private static final String TRACE_APPLY = "FoldableTextView#apply";
+    // 每个控件保存折叠结果的宽度数量，覆盖横竖屏、分屏和折叠屏的展开与折叠
+    private static final int WIDTH_BUCKET_COUNT = 4;
     // 是否切换时展示动画效果
     private volatile boolean animating = false;
     // 当前状态
@@ -43,12 +65,58 @@ public class FoldableTextView extends AppCompatTextView {
     private int mMaxLines = DEFAULT_MAX_LINE;
     // TextView可展示宽度，包含paddingLeft和paddingRight
     private int mViewWidth = 0;
+    // 外界设置了新的文本，需要在下一次测量时重新折叠；在父类构造中也会被赋值，不能有初始值
+    private boolean mFoldDirty;
+    // 宽度不受限制时在onSizeChanged中折叠
+    private boolean mFoldOnSizeChanged = false;
+    // 是否已经在下一帧安排了重新折叠
+    private boolean mRefoldScheduled;
+    // 同一帧内修改的文本和配置在下一帧的动画阶段只折叠一次，早于测量阶段执行
+    private final Runnable mRefoldRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mRefoldScheduled = false;
+            flushPendingRefold();
+        }
+    };
     // 原始的文本
     private CharSequence originalText;
+    // 通过appendText不断追加内容的原文副本，外界重新设置文本时丢弃
+    @Nullable
+    private SpannableStringBuilder mStreamText;
+    // 展开状态下继续追加内容时使用的原文排版，只重新排版最后一段，收起时丢弃
+    @Nullable
+    private AppendedLayout mStreamLayout;
+    // 展开状态下继续追加内容时显示的原文副本 + 收起后缀，由控件在原处修改，TextWatcher收到与普通编辑相同的通知
+    @Nullable
+    private SpannableStringBuilder mStreamOpenText;
+    // 展开和收起的文本本身就是Spannable，设置给TextView时不再复制
+    private final Spannable.Factory mSpannableFactory = new Spannable.Factory() {
+        @Override
+        public Spannable newSpannable(CharSequence source) {
+            if (source instanceof FoldedText || (source != null && source == mStreamOpenText)) {
+                return (Spannable) source;
+            }
+            return super.newSpannable(source);
+        }
+    };
+    // 添加了TextWatcher时TextView通过Editable.Factory复制文本，追加内容时显示的原文副本同样不复制
+    private final Editable.Factory mEditableFactory = new Editable.Factory() {
+        @Override
+        public Editable newEditable(CharSequence source) {
+            if (source != null && source == mStreamOpenText) {
+                return (Editable) source;
+            }
+            return super.newEditable(source);
+        }
+    };
 
-    private SpannableStringBuilder mOpenSpannableStr, mCloseSpannableStr;
+    // 展开和收起状态显示的文本，不需要调用handler时是原文的视图，不复制原文
+    private CharSequence mOpenSpannableStr, mCloseSpannableStr;
 
     private boolean hasAnimation = false;
+    private int mAnimationMode = ANIMATION_MODE_LAYOUT;
+    private ClipExpandCollapseAnimator mClipAnimator;
     private Animation mOpenAnim, mCloseAnim;
     private int mOpenHeight, mCLoseHeight;
     private boolean mExpandable;
@@ -56,7 +124,9 @@ public class FoldableTextView extends AppCompatTextView {
     private boolean mCloseisRightAlign = false;
     // 收起和展开的文字
     @Nullable
-    private SpannableString mOpenSuffixSpan, mCloseSuffixSpan;
+    private Spanned mOpenSuffixSpan, mCloseSuffixSpan;
+    // 后缀的文字或样式被修改，在下一次应用折叠结果时重新创建
+    private boolean mOpenSuffixDirty, mCloseSuffixDirty;
     // 展开的文字标识
     private String mOpenSuffixStr = DEFAULT_OPEN_SUFFIX;
     // 收起的文字标识
@@ -67,11 +137,96 @@ public class FoldableTextView extends AppCompatTextView {
     private boolean isSelfSet = false;
 
     private OnClickListener mOnClickListener;
+    // 可以展开时设置给控件的点击监听，只创建一次
+    private final OnClickListener mToggleClickListener = new OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            if (isClickToggleState) {
+                switchOpenClose();
+            }
+            if (mOnClickListener != null) {
+                mOnClickListener.onClick(v);
+            }
+        }
+    };
+    // 每个控件使用各自的MovementMethod，保存是否可以滚动和点击span的索引
+    private OverLinkMovementMethod mMovementMethod;
 
     // 是否点击触发切换展开和收起状态
     private boolean isClickToggleState = false;
 
     private CharSequenceToSpannableHandler mCharSequenceToSpannableHandler;
+    // 是否每个文本只调用一次mCharSequenceToSpannableHandler
+    private boolean mHandleOnce = false;
+    // 原文长度超过该值时收起状态只排版前缀，为0时总是排版全文
+    private int mPrefixThreshold = 0;
+    // 分页展开时每次点击展开的行数，为0时直接展开全文
+    private int mExpandPageLines = 0;
+    // 只处理一次模式下处理过的原文，展开和收起的文本都是它的视图
+    @Nullable
+    private SpannableStringBuilder mHandledText;
+    // 展开状态是否只绘制可见区域的行，以及正在以这种方式显示的展开文本的排版
+    private boolean mVirtualizeExpanded = false;
+    private boolean mVirtualShowing = false;
+    @Nullable
+    private VirtualTextLayout mVirtualLayout;
+    private final Rect mVisibleRect = new Rect();
+    // 可见区域移出已排版的行范围时重新绘制
+    private final ViewTreeObserver.OnScrollChangedListener mVirtualScrollListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    if (mVirtualShowing && mVirtualLayout != null && getLocalVisibleRect(mVisibleRect)
+                            && mVirtualLayout.needsLayout(mVisibleRect.top - getTotalPaddingTop(),
+                            mVisibleRect.bottom - getTotalPaddingTop())) {
+                        invalidate();
+                    }
+                }
+            };
+
+    // 折叠结果缓存，为null时不使用缓存
+    @Nullable
+    private FoldCache mFoldCache = FoldCache.getInstance();
+    // 当前文本在最近几个宽度下的折叠结果，宽度变化到已知的宽度时直接使用
+    private final FoldWidthBuckets mWidthBuckets = new FoldWidthBuckets(WIDTH_BUCKET_COUNT);
+    // 主线程空闲时预先计算折叠结果的控件宽度以及执行计算的线程池
+    @Nullable
+    private int[] mPrecomputeWidths;
+    @Nullable
+    private Executor mPrecomputeExecutor;
+    private boolean mPrecomputeScheduled;
+    // 最近一次折叠使用的排版配置和折叠结果
+    private FoldConfig mFoldConfig;
+    private FoldResult mFoldResult;
+    // 复用的配置Builder，属性没有变化时不再创建配置和复制画笔
+    private FoldConfig.Builder mFoldConfigBuilder;
+
+    // 异步计算折叠的线程池，为null时在主线程同步计算
+    @Nullable
+    private Executor mFoldExecutor;
+    // 未完成的异步折叠计算
+    @Nullable
+    private FutureTask<FoldResult> mPendingFold;
+    // 每次重新计算折叠时递增，用于丢弃过期的异步结果
+    private int mFoldGeneration;
+
+    // 折叠统计的监听以及正在记录的统计数据
+    @Nullable
+    private FoldMetricsListener mFoldMetricsListener;
+    @Nullable
+    private FoldMetrics mFoldMetrics;
+
+    // 点击切换状态时由外部接管，为null时控件自己执行动画
+    @Nullable
+    private ToggleHandler mToggleHandler;
+
+    // 保存展开和收起状态的store以及当前条目的id
+    @Nullable
+    private FoldStateStore mStateStore;
+    private long mStateId;
+    // 原文的hash，原文改变时失效
+    private int mOriginalTextHash;
+    private boolean mOriginalTextHashValid;
 
     public FoldableTextView(Context context) {
         super(context);
@@ -95,9 +250,11 @@ public class FoldableTextView extends AppCompatTextView {
         TypedArray typedArray = getContext().getTheme().obtainStyledAttributes(attrs,
                 R.styleable.FoldableTextView, 0, 0);
         hasAnimation = typedArray.getBoolean(R.styleable.FoldableTextView_hasAnimation, true);
+        mAnimationMode = typedArray.getInt(R.styleable.FoldableTextView_foldAnimationMode, ANIMATION_MODE_LAYOUT);
         mCloseInNewLine = typedArray.getBoolean(R.styleable.FoldableTextView_closeInNewLine, false);
         mCloseisRightAlign = typedArray.getBoolean(R.styleable.FoldableTextView_closeAlignRight, false);
         isClickToggleState = typedArray.getBoolean(R.styleable.FoldableTextView_isClickToggleState, false);
+        mExpandPageLines = typedArray.getInt(R.styleable.FoldableTextView_expandPageLines, 0);
         mOpenSuffixColor = typedArray.getColor(R.styleable.FoldableTextView_closeSuffixColor, Color.parseColor("#F23030"));
         mCloseSuffixColor = typedArray.getColor(R.styleable.FoldableTextView_openSuffixColor, Color.parseColor("#F23030"));
         mOpenSuffixStr = typedArray.getString(R.styleable.FoldableTextView_openSuffixText);
@@ -110,7 +267,10 @@ public class FoldableTextView extends AppCompatTextView {
         }
         typedArray.recycle();
 
-        setMovementMethod(OverLinkMovementMethod.getInstance());
+        setSpannableFactory(mSpannableFactory);
+        setEditableFactory(mEditableFactory);
+        mMovementMethod = new OverLinkMovementMethod();
+        setMovementMethod(mMovementMethod);
         setIncludeFontPadding(false);
         updateOpenSuffixSpan();
         updateCloseSuffixSpan();
@@ -121,177 +281,1108 @@ public class FoldableTextView extends AppCompatTextView {
         return false;
     }
 
+    @Override
+    public void requestLayout() {
+        FoldStatistics.getInstance().countRequestLayout();
+        super.requestLayout();
+    }
+
+    // 在测量阶段按MeasureSpec的宽度折叠，第一次测量就得到收起状态的高度，避免再次布局
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mFoldOnSizeChanged = MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED;
+        if (!mFoldOnSizeChanged) {
+            int width = MeasureSpec.getSize(widthMeasureSpec);
+            if (mViewWidth != width || mFoldDirty) {
+                mViewWidth = width;
+                refold();
+            }
+        }
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        if (mVirtualShowing && mVirtualLayout != null) {
+            // TextView本身没有文本，高度按虚拟排版的总高度计算
+            int height = mVirtualLayout.getHeight() + getTotalPaddingTop() + getTotalPaddingBottom();
+            setMeasuredDimension(getMeasuredWidth(), resolveSize(height, heightMeasureSpec));
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mVirtualizeExpanded) {
+            getViewTreeObserver().addOnScrollChangedListener(mVirtualScrollListener);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(mVirtualScrollListener);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mVirtualShowing || mVirtualLayout == null) {
+            super.onDraw(canvas);
+            return;
+        }
+        if (!getLocalVisibleRect(mVisibleRect)) {
+            return;
+        }
+        // TextView只在自己的onDraw中更新画笔颜色
+        TextPaint paint = getPaint();
+        paint.setColor(getCurrentTextColor());
+        paint.drawableState = getDrawableState();
+        if (getLinkTextColors() != null) {
+            paint.linkColor = getLinkTextColors().getColorForState(getDrawableState(), 0);
+        }
+        canvas.save();
+        canvas.translate(getTotalPaddingLeft(), getTotalPaddingTop());
+        mVirtualLayout.draw(canvas, paint, mVisibleRect.top - getTotalPaddingTop(),
+                mVisibleRect.bottom - getTotalPaddingTop());
+        canvas.restore();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mVirtualShowing && mVirtualLayout != null) {
+            int action = event.getActionMasked();
+            if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_UP) {
+                ClickableSpan span = mVirtualLayout.findClickableSpan(event.getX() - getTotalPaddingLeft(),
+                        event.getY() - getTotalPaddingTop());
+                if (span != null) {
+                    if (action == MotionEvent.ACTION_UP) {
+                        span.onClick(this);
+                    }
+                    return true;
+                }
+            }
+        }
+        return super.onTouchEvent(event);
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        if (!mFoldOnSizeChanged) {
+            return;
+        }
+        // 宽度不受限制时只能按测量后的宽度折叠
         int measuredWidth = getMeasuredWidth();
-        if (mViewWidth != measuredWidth) {
+        if (mViewWidth != measuredWidth || mFoldDirty) {
             mViewWidth = measuredWidth;
+            refold();
+        }
+    }
+
+    // 外界设置的text保留为原始的需要显示的文本
+    @Override
+    public void setText(CharSequence text, BufferType type) {
+        if (!isSelfSet && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && text instanceof PrecomputedTextCompat
+                && ((PrecomputedTextCompat) text).getParams().equals(TextViewCompat.getTextMetricsParams(this))) {
+            // Q及以上转为其中的PrecomputedText重新调用setText；Q以下setPrecomputedText会直接设置
+            // PrecomputedTextCompat本身，再次转发会无限递归，按未命中处理
+            TextViewCompat.setPrecomputedText(this, (PrecomputedTextCompat) text);
+            return;
+        }
+        if (!isSelfSet && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && text instanceof PrecomputedText
+                && !((PrecomputedText) text).getParams().equals(getTextMetricsParams())) {
+            // 测量参数与控件不一致时TextView会抛出异常，按普通文本重新测量
+            FoldStatistics.getInstance().countPrecomputedMiss();
+            text = new SpannableStringBuilder(text);
+        }
+        super.setText(text, type);
+        if (!isSelfSet) {
+            // 收起和展开的文本是原文的视图，可修改的文本先复制一份，之后调用方的修改不会影响显示的内容
+            originalText = text instanceof Editable ? new SpannableStringBuilder(text) : text;
+            mOriginalTextHashValid = false;
+            scheduleRefold();
+            // 外界重新设置文本，取消未完成的异步计算并回到同步模式，同时解除条目状态的绑定
+            mFoldExecutor = null;
+            mStateStore = null;
+            mVirtualShowing = false;
+            mVirtualLayout = null;
+            mStreamText = null;
+            mStreamLayout = null;
+            mStreamOpenText = null;
+            // 父类构造中设置文本时还没有初始化
+            if (mWidthBuckets != null) {
+                mWidthBuckets.clear();
+            }
+            if (mPendingFold != null) {
+                cancelPendingFold();
+            }
+        } else {
+            isSelfSet = false;
+        }
+    }
+
+    /**
+     * 在原文末尾追加内容，用于不断增长的文本，例如逐字输出的聊天消息和日志
+     * 收起状态已经饱和时截取位置不变，收起的文本和高度都不需要重新计算，显示的内容也不会改变；
+     * 展开状态只重新排版最后一段，之前的段落不再测量；收起状态还没有饱和时在下一帧重新折叠
+     * 第一次追加时复制原文，之后只在副本末尾追加；设置了{@link CharSequenceToSpannableHandler}时每次都重新折叠
+     *
+     * @param text 追加的内容
+     */
+    public void appendText(@Nullable CharSequence text) {
+        if (TextUtils.isEmpty(text)) {
+            return;
+        }
+        if (mFoldExecutor != null) {
+            // 后台线程可能正在使用原文，不能在原处追加
+            setTextAsync(TextUtils.concat(originalText != null ? originalText : "", text), mFoldExecutor);
+            return;
+        }
+        if (!isStreaming()) {
+            mStreamText = new SpannableStringBuilder(originalText != null ? originalText : "");
+            originalText = mStreamText;
+        }
+        int oldLength = mStreamText.length();
+        mStreamText.append(text);
+        mOriginalTextHashValid = false;
+        if (mStreamLayout != null) {
+            mStreamLayout.append(text);
+        }
+        // 只处理一次模式下没有handler时处理后的文本只是原文的副本，直接使用原文
+        mHandledText = null;
+        mWidthBuckets.clear();
+        if (!appendIncrementally(oldLength)) {
+            mStreamLayout = null;
+            mStreamOpenText = null;
+            scheduleRefold();
+        }
+    }
+
+    /**
+     * 原文是否为appendText追加内容的副本，副本会被修改，不能放入缓存或在其他线程中使用
+     */
+    private boolean isStreaming() {
+        return mStreamText != null && originalText == mStreamText;
+    }
+
+    /**
+     * 收起状态已经饱和时增量更新折叠结果，不需要重新折叠
+     *
+     * @param oldLength 追加前的原文长度
+     * @return 需要重新折叠时返回false
+     */
+    private boolean appendIncrementally(int oldLength) {
+        FoldResult result = mFoldResult;
+        if (mFoldDirty || result == null || !result.expandable || mFoldConfig == null
+                || mCharSequenceToSpannableHandler != null || mExpandPageLines > 0 || animating
+                || !isCloseStable(result, oldLength)) {
+            return false;
+        }
+        FoldResult appended = result.forAppendedText();
+        if (isClosed) {
+            // 收起的文本和高度都不变，展开状态在展开时再计算
+            mStreamLayout = null;
+            mStreamOpenText = null;
+            mFoldResult = appended;
+            mOpenSpannableStr = buildOpenText(appended, null);
+            mVirtualLayout = null;
+            return true;
+        }
+        extendOpenText(appended, oldLength);
+        return true;
+    }
+
+    /**
+     * 追加内容后收起状态是否不变：截取的行都在追加前已经结束的段落中，
+     * 或者逐行贪心换行时截取的行不是原文的最后一行，之后追加的内容不会改变它的换行
+     */
+    private boolean isCloseStable(FoldResult result, int oldLength) {
+        if (mFoldConfig.isGreedyLineBreak()) {
+            return true;
+        }
+        int paragraphStart = TextUtils.lastIndexOf(mStreamText, '\n', oldLength - 1) + 1;
+        return paragraphStart > 0 && result.closePosition <= paragraphStart;
+    }
+
+    /**
+     * 展开状态下追加内容：只重新排版最后一段计算收起后缀的位置和展开的高度，
+     * 显示的原文副本在原处把旧的后缀替换为追加的内容和新的后缀，TextView的DynamicLayout收到通知后也只重新排版最后一段
+     *
+     * @param oldLength 追加前的原文长度
+     */
+    private void extendOpenText(FoldResult appended, int oldLength) {
+        FoldResult resolved = resolveAppendedFold(appended);
+        mFoldResult = resolved;
+        if (mVirtualShowing) {
+            mStreamOpenText = null;
+            mOpenSpannableStr = buildOpenText(resolved, null);
+            mVirtualLayout = null;
+            ensureVirtualLayout();
+            requestLayout();
+            invalidate();
+        } else if (mStreamOpenText != null && getText() == mStreamOpenText) {
+            mStreamOpenText.replace(oldLength, mStreamOpenText.length(),
+                    TextUtils.concat(mStreamText.subSequence(oldLength, mStreamText.length()), buildOpenTail(resolved)));
+        } else {
+            // 第一次追加时复制一份原文用于显示，之后只在原处修改
+            FoldStatistics.getInstance().countSpannable();
+            mStreamOpenText = new SpannableStringBuilder(mStreamText).append(buildOpenTail(resolved));
+            mOpenSpannableStr = mStreamOpenText;
+            setSelfText(mStreamOpenText);
+        }
+        mOpenHeight = resolved.openHeight != FoldResult.UNKNOWN_HEIGHT
+                ? resolved.openHeight + getPaddingTop() + getPaddingBottom() : measureOpenHeight();
+        if (getLayoutParams() != null && getLayoutParams().height >= 0
+                && getLayoutParams().height != mOpenHeight) {
+            updateFixedHeight(mOpenHeight);
+            requestLayout();
+        }
+    }
+
+    /**
+     * 计算追加内容后的展开状态，Android 9以下没有与配置一致的DynamicLayout，排版全文
+     */
+    private FoldResult resolveAppendedFold(FoldResult result) {
+        FoldCalculator calculator = new FoldCalculator(mFoldConfig, null);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return calculator.resolveDeferred(mStreamText, null, result);
+        }
+        if (mStreamLayout == null) {
+            mStreamLayout = new AppendedLayout(mStreamText, mFoldConfig);
+        }
+        return calculator.resolveAppended(mStreamText, result, mStreamLayout.getLayout());
+    }
+
+    private void setSelfText(CharSequence text) {
+        mVirtualShowing = false;
+        isSelfSet = true;
+        setText(text);
+    }
+
+    public void setOriginalText() {
+        mFoldDirty = false;
+        Trace.beginSection(TRACE_FOLD);
+        mFoldMetrics = startFoldMetrics();
+        try {
+            cancelPendingFold();
+            mFoldConfig = createFoldConfig();
+            FoldCache.Key key = createFoldCacheKey();
+            SpannableStringBuilder handledText = mHandleOnce ? charSequenceToSpannable(originalText) : null;
+            FoldStateStore.Entry entry = findFoldState();
+            FoldResult result = entry != null ? entry.result : mWidthBuckets.get(mFoldConfig);
+            if (result == null && key != null) {
+                result = lookupFoldCache(key, mFoldMetrics);
+            }
+            if (result == null) {
+                result = new FoldCalculator(mFoldConfig, mCharSequenceToSpannableHandler)
+                        .fold(originalText, handledText, mFoldMetrics);
+                if (key != null) {
+                    mFoldCache.put(key, result);
+                }
+            }
+            mWidthBuckets.put(mFoldConfig, result);
+            applyFoldResult(result, handledText);
+            schedulePrecompute();
+        } finally {
+            Trace.endSection();
+            finishFoldMetrics();
+        }
+    }
+
+    /**
+     * 查找折叠结果缓存并记录是否命中
+     */
+    @Nullable
+    private FoldResult lookupFoldCache(@NonNull FoldCache.Key key, @Nullable FoldMetrics metrics) {
+        Trace.beginSection(TRACE_CACHE);
+        try {
+            FoldResult result = mFoldCache.get(key);
+            if (metrics != null) {
+                metrics.cacheState = result != null ? FoldMetrics.CACHE_HIT : FoldMetrics.CACHE_MISS;
+            }
+            return result;
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * 设置了监听或开启了全局统计时开始记录本次折叠的统计数据
+     */
+    @Nullable
+    private FoldMetrics startFoldMetrics() {
+        if (mFoldMetricsListener == null && !FoldStatistics.getInstance().isEnabled()) {
+            return null;
+        }
+        FoldMetrics metrics = new FoldMetrics(System.nanoTime());
+        metrics.textLength = originalText != null ? originalText.length() : 0;
+        return metrics;
+    }
+
+    private void finishFoldMetrics() {
+        FoldMetrics metrics = mFoldMetrics;
+        mFoldMetrics = null;
+        if (metrics == null) {
+            return;
+        }
+        metrics.wallTimeNanos = System.nanoTime() - metrics.startNanos;
+        if (FoldStatistics.getInstance().isEnabled()) {
+            FoldStatistics.getInstance().record(getClass(), metrics);
+        }
+        if (mFoldMetricsListener != null) {
+            mFoldMetricsListener.onFold(this, metrics);
+        }
+    }
+
+    /**
+     * 设置文本并绑定条目id，展开和收起状态会保存在store中
+     * RecyclerView复用控件重新绑定同一条目时直接恢复之前的状态，不需要重新测量也不执行动画
+     *
+     * @param text   文本
+     * @param itemId 条目的稳定id
+     * @param store  保存状态的store，通常整个列表共用一个
+     */
+    public void setText(CharSequence text, long itemId, @NonNull FoldStateStore store) {
+        setText(text);
+        mStateStore = store;
+        mStateId = itemId;
+        if (mViewWidth > 0) {
             setOriginalText();
         }
     }
 
-    // 外界设置的text保留为原始的需要显示的文本
-    @Override
-    public void setText(CharSequence text, BufferType type) {
-        super.setText(text, type);
-        if (!isSelfSet) {
-            originalText = text;
+    /**
+     * 查找当前条目保存的状态，文本或排版配置已经改变时返回null
+     */
+    @Nullable
+    private FoldStateStore.Entry findFoldState() {
+        if (mStateStore == null || mFoldConfig == null || originalText == null) {
+            return null;
+        }
+        FoldStateStore.Entry entry = mStateStore.get(mStateId);
+        if (entry == null || entry.textLength != originalText.length()
+                || entry.textHash != getOriginalTextHash() || entry.configHash != mFoldConfig.hashCode()) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 保存当前条目的状态
+     */
+    private void saveFoldState(boolean expanded) {
+        if (mStateStore == null || mFoldConfig == null || mFoldResult == null) {
+            return;
+        }
+        int openHeight = hasAnimation || mFoldResult.openHeight != FoldResult.UNKNOWN_HEIGHT
+                ? mOpenHeight : FoldResult.UNKNOWN_HEIGHT;
+        mStateStore.put(mStateId, new FoldStateStore.Entry(originalText.length(), getOriginalTextHash(),
+                mFoldConfig.hashCode(), mFoldResult, mCLoseHeight, openHeight, expanded));
+    }
+
+    /**
+     * 原文字符的hash，与{@link String#hashCode()}相同但不复制字符，计算后缓存到原文改变
+     */
+    private int getOriginalTextHash() {
+        if (!mOriginalTextHashValid) {
+            CharSequence text = originalText;
+            int hash = 0;
+            if (text instanceof String) {
+                // String自身缓存了hash
+                hash = text.hashCode();
+            } else {
+                for (int i = 0, length = text.length(); i < length; i++) {
+                    hash = 31 * hash + text.charAt(i);
+                }
+            }
+            mOriginalTextHash = hash;
+            mOriginalTextHashValid = true;
+        }
+        return mOriginalTextHash;
+    }
+
+    /**
+     * 恢复当前条目保存的状态，不执行动画
+     */
+    private void restoreFoldState() {
+        FoldStateStore.Entry entry = findFoldState();
+        if (entry == null || !mExpandable) {
+            return;
+        }
+        mCLoseHeight = entry.closeHeight;
+        if (entry.openHeight != FoldResult.UNKNOWN_HEIGHT) {
+            mOpenHeight = entry.openHeight;
+        }
+        if (entry.expanded) {
+            isClosed = false;
+            showOpenText();
+            updateFixedHeight(mOpenHeight);
+        } else {
+            updateFixedHeight(mCLoseHeight);
+        }
+    }
+
+    /**
+     * 动画结束后高度被设置为固定值，恢复状态时同步更新
+     */
+    private void updateFixedHeight(int height) {
+        if (getLayoutParams() != null && getLayoutParams().height >= 0) {
+            getLayoutParams().height = height;
+        }
+    }
+
+    /**
+     * 设置文本并直接应用预先计算的折叠结果，不再进行排版测量
+     * result需要使用{@link #getFoldConfig(int)}以当前控件宽度得到的配置计算，宽度变化时会重新计算
+     *
+     * @param text   文本
+     * @param result 折叠结果
+     */
+    public void setFoldedText(CharSequence text, @NonNull FoldResult result) {
+        setText(text);
+        cancelPendingFold();
+        mFoldDirty = false;
+        if (mViewWidth > 0) {
+            mFoldConfig = createFoldConfig();
+        }
+        applyFoldResult(result, null);
+    }
+
+    /**
+     * 异步设置文本，折叠计算在executor中执行，计算完成前按maxLines直接展示原文，
+     * 计算完成后在下一帧应用折叠结果。重新设置文本时未完成的计算会被取消
+     * 注意：设置的{@link CharSequenceToSpannableHandler}会在executor的线程中调用
+     *
+     * @param text     文本
+     * @param executor 执行折叠计算的线程池
+     */
+    public void setTextAsync(CharSequence text, @NonNull Executor executor) {
+        setText(text);
+        mFoldExecutor = executor;
+        mExpandable = false;
+        isClosed = false;
+        super.setMaxLines(mMaxLines);
+        if (mViewWidth > 0) {
+            setOriginalTextAsync();
+        }
+    }
+
+    /**
+     * 根据是否为异步模式重新计算折叠
+     */
+    private void refold() {
+        if (mFoldExecutor != null) {
+            setOriginalTextAsync();
+        } else {
+            setOriginalText();
+        }
+    }
+
+    private void setOriginalTextAsync() {
+        mFoldDirty = false;
+        cancelPendingFold();
+        mFoldConfig = createFoldConfig();
+        final FoldMetrics metrics = startFoldMetrics();
+        if (metrics != null) {
+            metrics.async = true;
+        }
+        final FoldCache.Key key = createFoldCacheKey();
+        FoldResult cached = mWidthBuckets.get(mFoldConfig);
+        if (cached == null && key != null) {
+            cached = lookupFoldCache(key, metrics);
+        }
+        if (cached != null) {
+            mFoldMetrics = metrics;
+            mWidthBuckets.put(mFoldConfig, cached);
+            applyFoldResult(cached, null);
+            finishFoldMetrics();
+            schedulePrecompute();
+            return;
+        }
+        final FoldConfig config = mFoldConfig;
+        final int generation = mFoldGeneration;
+        final CharSequence text = originalText;
+        final FoldCache foldCache = mFoldCache;
+        final boolean handleOnce = mHandleOnce;
+        final CharSequenceToSpannableHandler handler = mCharSequenceToSpannableHandler;
+        final FoldCalculator calculator = new FoldCalculator(mFoldConfig, mCharSequenceToSpannableHandler);
+        mPendingFold = new FutureTask<>(new Callable<FoldResult>() {
+            @Override
+            public FoldResult call() {
+                final SpannableStringBuilder handledText = handleOnce ? FoldCalculator.toSpannable(handler, text) : null;
+                if (handledText != null && handler != null && metrics != null) {
+                    metrics.handlerCount++;
+                }
+                final FoldResult result = calculator.fold(text, handledText, metrics);
+                if (key != null) {
+                    foldCache.put(key, result);
+                }
+                postOnAnimation(new Runnable() {
+                    @Override
+                    public void run() {
+                        // 期间重新设置了文本或者重新计算，丢弃过期的结果
+                        if (generation == mFoldGeneration && text == originalText) {
+                            mPendingFold = null;
+                            mFoldMetrics = metrics;
+                            mWidthBuckets.put(config, result);
+                            applyFoldResult(result, handledText);
+                            finishFoldMetrics();
+                            schedulePrecompute();
+                        }
+                    }
+                });
+                return result;
+            }
+        });
+        mFoldExecutor.execute(mPendingFold);
+    }
+
+    /**
+     * 取消未完成的异步折叠计算
+     */
+    private void cancelPendingFold() {
+        mFoldGeneration++;
+        if (mPendingFold != null) {
+            mPendingFold.cancel(false);
+            mPendingFold = null;
+        }
+    }
+
+    /**
+     * 主线程空闲时在线程池中计算其他宽度的折叠结果
+     */
+    private void schedulePrecompute() {
+        if (mPrecomputeWidths == null || mPrecomputeExecutor == null || mPrecomputeScheduled) {
+            return;
+        }
+        mPrecomputeScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                mPrecomputeScheduled = false;
+                precomputeWidths();
+                return false;
+            }
+        });
+    }
+
+    private void precomputeWidths() {
+        if (mPrecomputeWidths == null || mPrecomputeExecutor == null || originalText == null || isStreaming()) {
+            return;
+        }
+        final CharSequence text = originalText;
+        final FoldCache foldCache = mFoldCache;
+        for (int viewWidth : mPrecomputeWidths) {
+            if (viewWidth == mViewWidth || viewWidth <= getPaddingLeft() + getPaddingRight()) {
+                continue;
+            }
+            final FoldConfig config = getFoldConfig(viewWidth);
+            if (mWidthBuckets.contains(config)) {
+                continue;
+            }
+            final FoldCache.Key key = foldCache != null
+                    ? new FoldCache.Key(text, mCharSequenceToSpannableHandler, config) : null;
+            final FoldCalculator calculator = new FoldCalculator(config, mCharSequenceToSpannableHandler);
+            mPrecomputeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    FoldResult cached = key != null ? foldCache.get(key) : null;
+                    final FoldResult result = cached != null ? cached : calculator.fold(text);
+                    if (key != null && cached == null) {
+                        foldCache.put(key, result);
+                    }
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // 期间重新设置了文本，丢弃过期的结果
+                            if (text == originalText) {
+                                mWidthBuckets.put(config, result);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    @Nullable
+    private FoldCache.Key createFoldCacheKey() {
+        if (mFoldCache == null || isStreaming()) {
+            return null;
+        }
+        return new FoldCache.Key(originalText, mCharSequenceToSpannableHandler, mFoldConfig);
+    }
+
+    /**
+     * 根据折叠结果设置展开和收起的文本，不需要再进行排版测量
+     *
+     * @param handledText 只处理一次模式下已经处理过的原文，为null时按需处理
+     */
+    private void applyFoldResult(FoldResult result, @Nullable SpannableStringBuilder handledText) {
+        Trace.beginSection(TRACE_APPLY);
+        try {
+            applyFoldResultInternal(result, handledText);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void applyFoldResultInternal(FoldResult result, @Nullable SpannableStringBuilder handledText) {
+        if (mOpenSuffixDirty) {
+            updateOpenSuffixSpan();
+        }
+        if (mCloseSuffixDirty) {
+            updateCloseSuffixSpan();
+        }
+        mFoldResult = result;
+        mExpandable = result.expandable;
+        if (mHandleOnce && handledText == null) {
+            handledText = charSequenceToSpannable(originalText);
+        }
+        if (mExpandable) {
+            mCloseSpannableStr = handledText != null
+                    ? FoldCalculator.buildCloseText(handledText, result.closePosition, mOpenSuffixSpan)
+                    : buildCloseText(result.closePosition);
+            mCLoseHeight = result.closeHeight + getPaddingTop() + getPaddingBottom();
+            if (result.openHeight != FoldResult.UNKNOWN_HEIGHT) {
+                mOpenHeight = result.openHeight + getPaddingTop() + getPaddingBottom();
+            }
+        }
+        mHandledText = handledText;
+        mVirtualLayout = null;
+        mStreamLayout = null;
+        mStreamOpenText = null;
+        mOpenSpannableStr = buildOpenText(result, handledText);
+        isClosed = mExpandable;
+        if (mExpandable) {
+            setSelfText(mCloseSpannableStr);
+            //设置监听
+            super.setOnClickListener(mToggleClickListener);
+        } else {
+            setSelfText(mOpenSpannableStr);
+        }
+        restoreFoldState();
+    }
+
+    /**
+     * 构建展开状态的文本：原文 + 收起后缀，后缀是共用的
+     */
+    private CharSequence buildOpenText(FoldResult result, @Nullable SpannableStringBuilder handledText) {
+        CharSequence text = handledText;
+        if (text == null) {
+            text = mCharSequenceToSpannableHandler != null ? charSequenceToSpannable(originalText) : originalText;
+        }
+        CharSequence suffix = buildOpenTail(result);
+        if (suffix.length() == 0 && text == originalText) {
+            CharSequence precomputed = findDisplayablePrecomputed();
+            if (precomputed != null) {
+                return precomputed;
+            }
+        }
+        return new FoldedText(text, 0, text.length(), suffix);
+    }
+
+    /**
+     * 展开状态末尾的收起后缀，收起后缀的位置推迟计算时不拼接
+     */
+    private CharSequence buildOpenTail(FoldResult result) {
+        if (result.closeSuffixMode == FoldResult.CLOSE_SUFFIX_NONE
+                || result.closeSuffixMode == FoldResult.CLOSE_SUFFIX_DEFERRED) {
+            return "";
+        }
+        return SuffixSpans.openTail(mCloseSuffixSpan,
+                result.closeSuffixMode == FoldResult.CLOSE_SUFFIX_NEW_LINE, result.closeSuffixGap);
+    }
+
+    /**
+     * 预先计算的原文与控件的测量参数一致时可以直接显示，TextView不再重新测量
+     */
+    @Nullable
+    private CharSequence findDisplayablePrecomputed() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || mFoldConfig == null) {
+            return null;
+        }
+        CharSequence precomputed = PrecomputedTexts.match(originalText, mFoldConfig);
+        if (precomputed instanceof PrecomputedText
+                && ((PrecomputedText) precomputed).getParams().equals(getTextMetricsParams())) {
+            return precomputed;
+        }
+        return null;
+    }
+
+    /**
+     * 返回当前的排版配置，与已有的配置相同时直接复用，不再复制画笔
+     */
+    private FoldConfig createFoldConfig() {
+        if (mFoldConfigBuilder == null) {
+            mFoldConfigBuilder = new FoldConfig.Builder(getPaint(), 0);
+        }
+        setupFoldConfig(mFoldConfigBuilder, mViewWidth);
+        if (mFoldConfigBuilder.matches(mFoldConfig)) {
+            return mFoldConfig;
+        }
+        return mFoldConfigBuilder.build();
+    }
+
+    /**
+     * 以当前的画笔、padding和后缀等设置创建排版配置，用于在控件外通过{@link FoldCalculator}预先计算折叠结果
+     *
+     * @param viewWidth 控件宽度，包含paddingLeft和paddingRight
+     */
+    @NonNull
+    public FoldConfig getFoldConfig(int viewWidth) {
+        FoldConfig.Builder builder = new FoldConfig.Builder(getPaint(), 0);
+        setupFoldConfig(builder, viewWidth);
+        return builder.build();
+    }
+
+    private void setupFoldConfig(FoldConfig.Builder builder, int viewWidth) {
+        builder.setContentWidth(viewWidth - getPaddingLeft() - getPaddingRight())
+                .setMaxLines(mMaxLines)
+                .setLineSpacing(getLineSpacingExtra(), getLineSpacingMultiplier())
+                .setIncludePad(getIncludeFontPadding())
+                .setOpenSuffix(mOpenSuffixStr)
+                .setCloseSuffix(mCloseSuffixStr)
+                .setCloseInNewLine(mCloseInNewLine)
+                .setCloseAlignRight(mCloseisRightAlign)
+                .setHandleOnce(mHandleOnce)
+                .setPrefixThreshold(mPrefixThreshold);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            builder.setBreakStrategy(getBreakStrategy())
+                    .setHyphenationFrequency(getHyphenationFrequency());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setJustificationMode(getJustificationMode());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            builder.setFallbackLineSpacing(isFallbackLineSpacing());
+        }
+    }
+
+    /**
+     * 构建收起状态的文本：原文前closePos个字符 + 省略号 + 展开后缀
+     */
+    private CharSequence buildCloseText(int closePos) {
+        if (mFoldMetrics != null && mCharSequenceToSpannableHandler != null) {
+            mFoldMetrics.handlerCount += 2;
+        }
+        return FoldCalculator.buildCloseText(mCharSequenceToSpannableHandler, originalText, closePos, mOpenSuffixSpan);
+    }
+
+    private int hasEnCharCount(CharSequence str) {
+        int count = 0;
+        if (!TextUtils.isEmpty(str)) {
+            for (int i = 0; i < str.length(); i++) {
+                char c = str.charAt(i);
+                if (c >= ' ' && c <= '~') {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    void switchOpenClose() {
+        flushPendingRefold();
+        if (mExpandable) {
+            if (isClosed && mExpandPageLines > 0) {
+                openNextPage();
+                return;
+            }
+            if (mToggleHandler != null && !animating && mToggleHandler.onToggle(this, isClosed)) {
+                return;
+            }
+            isClosed = !isClosed;
+            if (isClosed) {
+                close();
+            } else {
+                open();
+            }
+        }
+    }
+
+    /**
+     * 设置是否有动画
+     *
+     * @param hasAnimation
+     */
+    public void setHasAnimation(boolean hasAnimation) {
+        this.hasAnimation = hasAnimation;
+    }
+
+    /**
+     * 设置动画方式
+     *
+     * @param animationMode {@link #ANIMATION_MODE_LAYOUT}每一帧修改高度并重新布局；
+     *                      {@link #ANIMATION_MODE_CLIP}只布局一次，每一帧修改裁剪区域和下方控件的位移
+     */
+    public void setAnimationMode(int animationMode) {
+        mAnimationMode = animationMode;
+    }
+
+    public void toggleState() {
+        flushPendingRefold();
+        if (!mExpandable) {
+            return;
+        }
+        isClosed = !isClosed;
+        if (isClosed) {
+            close();
+        } else {
+            open();
+        }
+    }
+
+    /**
+     * 是否处于展开状态
+     */
+    public boolean isExpanded() {
+        return mExpandable && !isClosed;
+    }
+
+    /**
+     * 不执行动画直接切换到展开或收起状态，高度使用折叠时计算好的值，由外部负责过渡动画
+     *
+     * @param expanded 是否展开
+     * @return 状态是否改变，文本不需要收起、正在执行动画或者已经是该状态时返回false
+     */
+    public boolean setExpanded(boolean expanded) {
+        flushPendingRefold();
+        if (!mExpandable || animating || isClosed != expanded) {
+            return false;
+        }
+        isClosed = !expanded;
+        if (expanded) {
+            resolveDeferredFold();
+            if (mFoldResult == null || mFoldResult.openHeight == FoldResult.UNKNOWN_HEIGHT) {
+                mOpenHeight = measureOpenHeight();
+            }
+            saveFoldState(true);
+            showOpenText();
+            updateFixedHeight(mOpenHeight);
+            if (mOpenCloseCallback != null) {
+                mOpenCloseCallback.onOpen();
+            }
+        } else {
+            saveFoldState(false);
+            FoldableTextView.super.setMaxLines(mMaxLines);
+            setSelfText(mCloseSpannableStr);
+            updateFixedHeight(mCLoseHeight);
+            if (mOpenCloseCallback != null) {
+                mOpenCloseCallback.onClose();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 设置点击后缀或文本切换状态时的处理，例如{@link FoldItemAnimator#TOGGLE_HANDLER}在RecyclerView中通过局部刷新执行动画
+     *
+     * @param handler 为null时控件自己执行动画
+     */
+    public void setToggleHandler(@Nullable ToggleHandler handler) {
+        mToggleHandler = handler;
+    }
+
+    /**
+     * 展开
+     */
+    private void open() {
+        flushPendingRefold();
+        resolveDeferredFold();
+        if (hasAnimation) {
+            if (mFoldResult == null || mFoldResult.openHeight == FoldResult.UNKNOWN_HEIGHT) {
+                mOpenHeight = measureOpenHeight();
+            }
+            saveFoldState(true);
+            if (mAnimationMode == ANIMATION_MODE_CLIP) {
+                executeClipOpenAnim();
+            } else {
+                executeOpenAnim();
+            }
+        } else {
+            saveFoldState(true);
+            showOpenText();
+            if (mOpenCloseCallback != null) {
+                mOpenCloseCallback.onOpen();
+            }
+        }
+    }
+
+    /**
+     * 分页展开：在当前页的基础上再展示mExpandPageLines行，剩余的内容不足一页时展开全文
+     * 只排版从当前页最后一行开始的一段文本，每次点击的耗时与原文的总长度无关
+     */
+    private void openNextPage() {
+        if (animating) {
+            return;
+        }
+        Layout layout = getLayout();
+        FoldEngine.Page page = null;
+        int pageTop = 0;
+        if (layout != null && mFoldConfig != null) {
+            // 当前页最后一行拼接了省略号和展开后缀，下一页从这一行重新排版
+            int lastLine = layout.getLineCount() - 1;
+            pageTop = layout.getLineTop(lastLine);
+            int end = mHandledText != null ? mHandledText.length() : originalText.length();
+            page = new FoldCalculator(mFoldConfig, mCharSequenceToSpannableHandler).foldPage(originalText,
+                    mHandledText, layout.getLineStart(lastLine), end, mExpandPageLines + 1);
+        }
+        if (page == null) {
+            isClosed = false;
+            resolveDeferredFold();
+            if (hasAnimation && (mFoldResult == null || mFoldResult.openHeight == FoldResult.UNKNOWN_HEIGHT)) {
+                mOpenHeight = measureOpenHeight();
+            }
+            saveFoldState(true);
+            showPage(mOpenSpannableStr, mOpenHeight, true);
+            return;
+        }
+        CharSequence pageText = mHandledText != null
+                ? FoldCalculator.buildCloseText(mHandledText, page.closePosition, mOpenSuffixSpan)
+                : buildCloseText(page.closePosition);
+        showPage(pageText, pageTop + page.height + getPaddingTop() + getPaddingBottom(), false);
+    }
+
+    /**
+     * 显示分页展开的一页，最后一页为展开的全文
+     */
+    private void showPageText(CharSequence text) {
+        if (text == mOpenSpannableStr) {
+            showOpenText();
         } else {
-            isSelfSet = false;
+            FoldableTextView.super.setMaxLines(Integer.MAX_VALUE);
+            setSelfText(text);
         }
     }
 
-    private void setSelfText(CharSequence text) {
-        setText(text);
-        isSelfSet = true;
-    }
-
-    public void setOriginalText() {
-        mExpandable = false;
-        final int maxLines = mMaxLines;
-        SpannableStringBuilder tempText = charSequenceToSpannable(originalText);
-        mOpenSpannableStr = charSequenceToSpannable(originalText);
-
-        if (maxLines > 0) {
-            Layout layout = createStaticLayout(tempText);
-            mExpandable = layout.getLineCount() > maxLines;
-            if (mExpandable) {
-                //计算原文截取位置
-                int endPos = layout.getLineEnd(maxLines - 1);
-
-                if (originalText.length() <= endPos) {
-                    mCloseSpannableStr = charSequenceToSpannable(originalText);
-                } else {
-                    mCloseSpannableStr = charSequenceToSpannable(originalText.subSequence(0, endPos));
-                }
-                SpannableStringBuilder tempText2 = charSequenceToSpannable(mCloseSpannableStr).append(ELLIPSIS_STRING);
-                if (mOpenSuffixSpan != null) {
-                    tempText2.append(mOpenSuffixSpan);
-                }
-                //循环判断，收起内容添加展开后缀后的内容
-                Layout tempLayout = createStaticLayout(tempText2);
-                while (tempLayout.getLineCount() > maxLines) {
-                    int lastSpace = mCloseSpannableStr.length() - 1;
-                    if (lastSpace == -1) {
-                        break;
-                    }
-                    if (originalText.length() <= lastSpace) {
-                        mCloseSpannableStr = charSequenceToSpannable(originalText);
-                    } else {
-                        mCloseSpannableStr = charSequenceToSpannable(originalText.subSequence(0, lastSpace));
-                    }
-                    tempText2 = charSequenceToSpannable(mCloseSpannableStr).append(ELLIPSIS_STRING);
-                    if (mOpenSuffixSpan != null) {
-                        tempText2.append(mOpenSuffixSpan);
-                    }
-                    tempLayout = createStaticLayout(tempText2);
-                }
-                //计算收起的文本高度
-                mCLoseHeight = tempLayout.getHeight() + getPaddingTop() + getPaddingBottom();
-                mCloseSpannableStr = tempText2;
-
-                if (mCloseSuffixSpan != null) {
-                    if (mCloseInNewLine) {
-                        mOpenSpannableStr.append("\n");
-                        mOpenSpannableStr.append(mCloseSuffixSpan);
-                    } else {
-                        mOpenSpannableStr.append(mCloseSuffixSpan);
-                        Layout tempLayout2 = createStaticLayout(mOpenSpannableStr);
-                        if (tempLayout2.getLineCount() > layout.getLineCount()) {
-                            mOpenSpannableStr = charSequenceToSpannable(originalText);
-                            mOpenSpannableStr.append("\n");
-                            mOpenSpannableStr.append(mCloseSuffixSpan);
-                        } else {
-                            if (mCloseisRightAlign) {
-                                int insertIndex;
-                                do {
-                                    insertIndex = mOpenSpannableStr.length() - mCloseSuffixSpan.length();
-                                    mOpenSpannableStr.insert(insertIndex, " ");
-                                    tempLayout2 = createStaticLayout(mOpenSpannableStr);
-                                } while (tempLayout2.getLineCount() == layout.getLineCount());
-                                mOpenSpannableStr.delete(insertIndex, insertIndex + 1);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        isClosed = mExpandable;
-        if (mExpandable) {
-            setSelfText(mCloseSpannableStr);
-            //设置监听
-            super.setOnClickListener(new OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    if (isClickToggleState) {
-                        switchOpenClose();
-                    }
-                    if (mOnClickListener != null) {
-                        mOnClickListener.onClick(v);
-                    }
-                }
-            });
+    /**
+     * 显示展开的全文，开启虚拟化时TextView本身不持有展开的文本，只绘制可见区域内的行
+     */
+    private void showOpenText() {
+        FoldableTextView.super.setMaxLines(Integer.MAX_VALUE);
+        if (mVirtualizeExpanded) {
+            ensureVirtualLayout();
+            setSelfText("");
+            mVirtualShowing = true;
+            requestLayout();
+            invalidate();
         } else {
             setSelfText(mOpenSpannableStr);
         }
     }
 
-    private int hasEnCharCount(CharSequence str) {
-        int count = 0;
-        if (!TextUtils.isEmpty(str)) {
-            for (int i = 0; i < str.length(); i++) {
-                char c = str.charAt(i);
-                if (c >= ' ' && c <= '~') {
-                    count++;
-                }
+    private VirtualTextLayout ensureVirtualLayout() {
+        if (mVirtualLayout == null) {
+            if (mFoldConfig == null) {
+                mFoldConfig = createFoldConfig();
             }
+            mVirtualLayout = new VirtualTextLayout(mOpenSpannableStr, mFoldConfig);
         }
-        return count;
+        return mVirtualLayout;
     }
 
-    private void switchOpenClose() {
-        if (mExpandable) {
-            isClosed = !isClosed;
-            if (isClosed) {
-                close();
-            } else {
-                open();
-            }
-        }
+    /**
+     * 计算展开状态的高度，包含padding
+     */
+    private int measureOpenHeight() {
+        int height = mVirtualizeExpanded
+                ? ensureVirtualLayout().getHeight()
+                : createStaticLayout(mOpenSpannableStr).getHeight();
+        return height + getPaddingTop() + getPaddingBottom();
     }
 
     /**
-     * 设置是否有动画
+     * 从当前的高度过渡到分页展开的下一页
      *
-     * @param hasAnimation
+     * @param last 是否为展开全文的最后一页
      */
-    public void setHasAnimation(boolean hasAnimation) {
-        this.hasAnimation = hasAnimation;
-    }
-
-    public void toggleState() {
-        if (isClosed) {
-            open();
-        } else {
-            close();
+    private void showPage(final CharSequence text, final int height, boolean last) {
+        if (!hasAnimation) {
+            showPageText(text);
+            updateFixedHeight(height);
+            if (last && mOpenCloseCallback != null) {
+                mOpenCloseCallback.onOpen();
+            }
+            return;
+        }
+        animating = true;
+        int startHeight = getHeight();
+        if (mAnimationMode == ANIMATION_MODE_CLIP) {
+            if (mClipAnimator == null) {
+                mClipAnimator = new ClipExpandCollapseAnimator(this);
+            }
+            showPageText(text);
+            getLayoutParams().height = height;
+            requestLayout();
+            mClipAnimator.start(startHeight, height, height, new Runnable() {
+                @Override
+                public void run() {
+                    animating = false;
+                    dispatchAnimationEnd(true, mClipAnimator.getFrameCount(), mClipAnimator.getElapsedMillis());
+                }
+            });
+            return;
         }
+        // 每一页的起止高度不同，不复用展开动画
+        Animation pageAnim = new ExpandCollapseAnimation(this, startHeight, height);
+        pageAnim.setFillAfter(true);
+        pageAnim.setAnimationListener(new Animation.AnimationListener() {
+            @Override
+            public void onAnimationStart(Animation animation) {
+                ((ExpandCollapseAnimation) animation).resetFrameCount();
+                showPageText(text);
+            }
+
+            @Override
+            public void onAnimationEnd(Animation animation) {
+                getLayoutParams().height = height;
+                requestLayout();
+                animating = false;
+                dispatchAnimationEnd(true, (ExpandCollapseAnimation) animation);
+            }
+
+            @Override
+            public void onAnimationRepeat(Animation animation) {
+
+            }
+        });
+        clearAnimation();
+        startAnimation(pageAnim);
     }
 
     /**
-     * 展开
+     * 只排版了前缀的折叠结果在第一次展开时排版全文，计算收起后缀的位置
      */
-    private void open() {
-        if (hasAnimation) {
-            Layout layout = createStaticLayout(mOpenSpannableStr);
-            mOpenHeight = layout.getHeight() + getPaddingTop() + getPaddingBottom();
-            executeOpenAnim();
-        } else {
-            FoldableTextView.super.setMaxLines(Integer.MAX_VALUE);
-            setSelfText(mOpenSpannableStr);
-            if (mOpenCloseCallback != null) {
-                mOpenCloseCallback.onOpen();
+    private void resolveDeferredFold() {
+        if (mFoldResult == null) {
+            return;
+        }
+        if (isStreaming() && mFoldResult.expandable && mFoldResult.openHeight == FoldResult.UNKNOWN_HEIGHT
+                && mCharSequenceToSpannableHandler == null && mFoldConfig != null) {
+            // 展开后还会继续追加内容，排版一次全文，之后追加时只重新排版最后一段
+            FoldResult resolved = resolveAppendedFold(mFoldResult);
+            mWidthBuckets.put(mFoldConfig, resolved);
+            mFoldResult = resolved;
+            mOpenSpannableStr = buildOpenText(resolved, null);
+            mVirtualLayout = null;
+            if (resolved.openHeight != FoldResult.UNKNOWN_HEIGHT) {
+                mOpenHeight = resolved.openHeight + getPaddingTop() + getPaddingBottom();
             }
+            return;
+        }
+        if (mFoldResult.closeSuffixMode != FoldResult.CLOSE_SUFFIX_DEFERRED) {
+            return;
+        }
+        SpannableStringBuilder handledText = mHandledText;
+        FoldResult resolved = new FoldCalculator(mFoldConfig, mCharSequenceToSpannableHandler)
+                .resolveDeferred(originalText, handledText, mFoldResult);
+        FoldCache.Key key = createFoldCacheKey();
+        if (key != null) {
+            mFoldCache.put(key, resolved);
+        }
+        mWidthBuckets.put(mFoldConfig, resolved);
+        mFoldResult = resolved;
+        mOpenSpannableStr = buildOpenText(resolved, handledText);
+        mVirtualLayout = null;
+        if (resolved.openHeight != FoldResult.UNKNOWN_HEIGHT) {
+            mOpenHeight = resolved.openHeight + getPaddingTop() + getPaddingBottom();
         }
     }
 
@@ -299,8 +1390,14 @@ public class FoldableTextView extends AppCompatTextView {
      * 收起
      */
     private void close() {
+        mStreamLayout = null;
+        saveFoldState(false);
         if (hasAnimation) {
-            executeCloseAnim();
+            if (mAnimationMode == ANIMATION_MODE_CLIP) {
+                executeClipCloseAnim();
+            } else {
+                executeCloseAnim();
+            }
         } else {
             FoldableTextView.super.setMaxLines(mMaxLines);
             setSelfText(mCloseSpannableStr);
@@ -321,8 +1418,8 @@ public class FoldableTextView extends AppCompatTextView {
             mOpenAnim.setAnimationListener(new Animation.AnimationListener() {
                 @Override
                 public void onAnimationStart(Animation animation) {
-                    FoldableTextView.super.setMaxLines(Integer.MAX_VALUE);
-                    setSelfText(mOpenSpannableStr);
+                    ((ExpandCollapseAnimation) animation).resetFrameCount();
+                    showOpenText();
                 }
 
                 @Override
@@ -331,6 +1428,7 @@ public class FoldableTextView extends AppCompatTextView {
                     getLayoutParams().height = mOpenHeight;
                     requestLayout();
                     animating = false;
+                    dispatchAnimationEnd(true, (ExpandCollapseAnimation) animation);
                 }
 
                 @Override
@@ -360,7 +1458,7 @@ public class FoldableTextView extends AppCompatTextView {
             mCloseAnim.setAnimationListener(new Animation.AnimationListener() {
                 @Override
                 public void onAnimationStart(Animation animation) {
-
+                    ((ExpandCollapseAnimation) animation).resetFrameCount();
                 }
 
                 @Override
@@ -370,6 +1468,7 @@ public class FoldableTextView extends AppCompatTextView {
                     setSelfText(mCloseSpannableStr);
                     getLayoutParams().height = mCLoseHeight;
                     requestLayout();
+                    dispatchAnimationEnd(false, (ExpandCollapseAnimation) animation);
                 }
 
                 @Override
@@ -388,152 +1487,214 @@ public class FoldableTextView extends AppCompatTextView {
         startAnimation(mCloseAnim);
     }
 
-    private Layout createStaticLayout(SpannableStringBuilder spannable) {
-        int contentWidth = mViewWidth - getPaddingLeft() - getPaddingRight();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            StaticLayout.Builder builder = StaticLayout.Builder.obtain(spannable, 0, spannable.length(), getPaint(), contentWidth);
-            builder.setAlignment(Layout.Alignment.ALIGN_NORMAL);
-            builder.setIncludePad(getIncludeFontPadding());
-            builder.setLineSpacing(getLineSpacingExtra(), getLineSpacingMultiplier());
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-                builder.setUseLineSpacingFromFallbacks(isFallbackLineSpacing());
-            }
-            builder.setBreakStrategy(getBreakStrategy());
-            builder.setHyphenationFrequency(getHyphenationFrequency());
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                builder.setJustificationMode(getJustificationMode());
-            }
-            return builder.build();
-        } else {
-            return new StaticLayout(spannable, getPaint(), contentWidth, Layout.Alignment.ALIGN_NORMAL,
-                    getLineSpacingMultiplier(), getLineSpacingExtra(), getIncludeFontPadding());
+    /**
+     * 执行裁剪方式的展开动画，先按展开高度布局一次，再逐帧扩大裁剪区域
+     */
+    private void executeClipOpenAnim() {
+        if (animating) {
+            return;
+        }
+        animating = true;
+        if (mClipAnimator == null) {
+            mClipAnimator = new ClipExpandCollapseAnimator(this);
+        }
+        showOpenText();
+        getLayoutParams().height = mOpenHeight;
+        requestLayout();
+        mClipAnimator.start(mCLoseHeight, mOpenHeight, mOpenHeight, new Runnable() {
+            @Override
+            public void run() {
+                animating = false;
+                dispatchAnimationEnd(true, mClipAnimator.getFrameCount(), mClipAnimator.getElapsedMillis());
+            }
+        });
+    }
+
+    /**
+     * 执行裁剪方式的收起动画，逐帧缩小裁剪区域，结束后再按收起高度布局一次
+     */
+    private void executeClipCloseAnim() {
+        if (animating) {
+            return;
+        }
+        animating = true;
+        if (mClipAnimator == null) {
+            mClipAnimator = new ClipExpandCollapseAnimator(this);
+        }
+        mClipAnimator.start(mOpenHeight, mCLoseHeight, mOpenHeight, new Runnable() {
+            @Override
+            public void run() {
+                animating = false;
+                FoldableTextView.super.setMaxLines(mMaxLines);
+                setSelfText(mCloseSpannableStr);
+                getLayoutParams().height = mCLoseHeight;
+                requestLayout();
+                dispatchAnimationEnd(false, mClipAnimator.getFrameCount(), mClipAnimator.getElapsedMillis());
+            }
+        });
+    }
+
+    private void dispatchAnimationEnd(boolean open, ExpandCollapseAnimation animation) {
+        dispatchAnimationEnd(open, animation.getFrameCount(), animation.getElapsedMillis());
+    }
+
+    private void dispatchAnimationEnd(boolean open, int frameCount, long durationMillis) {
+        if (mFoldMetricsListener != null) {
+            mFoldMetricsListener.onAnimationEnd(this, open, frameCount, durationMillis);
+        }
+    }
+
+    private Layout createStaticLayout(CharSequence spannable) {
+        if (mFoldMetrics != null) {
+            mFoldMetrics.layoutCount++;
+        }
+        if (mFoldConfig == null) {
+            mFoldConfig = createFoldConfig();
         }
+        return mFoldConfig.createLayout(spannable);
     }
 
     private SpannableStringBuilder charSequenceToSpannable(@NonNull CharSequence charSequence) {
-        SpannableStringBuilder spannableStringBuilder = null;
-        if (mCharSequenceToSpannableHandler != null) {
-            spannableStringBuilder = mCharSequenceToSpannableHandler.charSequenceToSpannable(charSequence);
+        if (mFoldMetrics != null && mCharSequenceToSpannableHandler != null) {
+            mFoldMetrics.handlerCount++;
+        }
+        return FoldCalculator.toSpannable(mCharSequenceToSpannableHandler, charSequence);
+    }
+
+    /**
+     * 同一帧内修改文本或配置后立即切换状态时，先完成等待中的折叠，不在旧的折叠结果上切换
+     */
+    private void flushPendingRefold() {
+        if (mFoldDirty && mViewWidth > 0) {
+            refold();
         }
-        if (spannableStringBuilder == null) {
-            spannableStringBuilder = new SpannableStringBuilder(charSequence);
+    }
+
+    /**
+     * 文本或配置变化后在下一帧重新折叠，同一帧内的任意多次修改只折叠一次
+     * 在此之前发生测量时由测量直接折叠
+     */
+    private void scheduleRefold() {
+        mFoldDirty = true;
+        // 父类构造中设置文本时还没有宽度，第一次测量时折叠
+        if (mRefoldScheduled || mViewWidth <= 0) {
+            return;
         }
-        return spannableStringBuilder;
+        mRefoldScheduled = true;
+        postOnAnimation(mRefoldRunnable);
     }
 
+    /**
+     * 设置收起状态的最大行数，在下一帧重新折叠
+     */
     @Override
     public void setMaxLines(int maxLines) {
+        if (mMaxLines == maxLines) {
+            return;
+        }
         this.mMaxLines = maxLines;
         super.setMaxLines(maxLines);
+        scheduleRefold();
     }
 
     /**
-     * 设置展开后缀text
+     * 设置展开后缀text，在下一帧重新折叠
      *
      * @param openSuffix
      */
     public void setOpenSuffix(String openSuffix) {
+        if (TextUtils.equals(mOpenSuffixStr, openSuffix)) {
+            return;
+        }
         mOpenSuffixStr = openSuffix;
-        updateOpenSuffixSpan();
+        mOpenSuffixDirty = true;
+        scheduleRefold();
     }
 
     /**
-     * 设置展开后缀文本颜色
+     * 设置展开后缀文本颜色，在下一帧重新折叠
      *
      * @param openSuffixColor
      */
     public void setOpenSuffixColor(@ColorInt int openSuffixColor) {
+        if (mOpenSuffixColor == openSuffixColor) {
+            return;
+        }
         mOpenSuffixColor = openSuffixColor;
-        updateOpenSuffixSpan();
+        mOpenSuffixDirty = true;
+        scheduleRefold();
     }
 
     /**
-     * 设置收起后缀text
+     * 设置收起后缀text，在下一帧重新折叠
      *
      * @param closeSuffix
      */
     public void setCloseSuffix(String closeSuffix) {
+        if (TextUtils.equals(mCloseSuffixStr, closeSuffix)) {
+            return;
+        }
         mCloseSuffixStr = closeSuffix;
-        updateCloseSuffixSpan();
+        mCloseSuffixDirty = true;
+        scheduleRefold();
     }
 
     /**
-     * 设置收起后缀文本颜色
+     * 设置收起后缀文本颜色，在下一帧重新折叠
      *
      * @param closeSuffixColor
      */
     public void setCloseSuffixColor(@ColorInt int closeSuffixColor) {
+        if (mCloseSuffixColor == closeSuffixColor) {
+            return;
+        }
         mCloseSuffixColor = closeSuffixColor;
-        updateCloseSuffixSpan();
+        mCloseSuffixDirty = true;
+        scheduleRefold();
     }
 
     /**
-     * 收起后缀是否另起一行
+     * 收起后缀是否另起一行，在下一帧重新折叠
      *
      * @param closeInNewLine
      */
     public void setCloseInNewLine(boolean closeInNewLine) {
+        if (mCloseInNewLine == closeInNewLine) {
+            return;
+        }
         mCloseInNewLine = closeInNewLine;
-        updateCloseSuffixSpan();
-//        setOriginalText();
+        mCloseSuffixDirty = true;
+        scheduleRefold();
     }
 
+    /**
+     * 收起后缀是否对齐到右侧，在下一帧重新折叠
+     *
+     * @param isAlighRight
+     */
     public void setCloseAlignRight(boolean isAlighRight) {
+        if (mCloseisRightAlign == isAlighRight) {
+            return;
+        }
         mCloseisRightAlign = isAlighRight;
-        updateCloseSuffixSpan();
-//        setOriginalText();
+        mCloseSuffixDirty = true;
+        scheduleRefold();
     }
 
     /**
      * 更新展开后缀Spannable
      */
     private void updateOpenSuffixSpan() {
-        if (TextUtils.isEmpty(mOpenSuffixStr)) {
-            mOpenSuffixSpan = null;
-            return;
-        }
-        mOpenSuffixSpan = new SpannableString(mOpenSuffixStr);
-        mOpenSuffixSpan.setSpan(new StyleSpan(android.graphics.Typeface.BOLD), 0, mOpenSuffixStr.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-        mOpenSuffixSpan.setSpan(new ClickableSpan() {
-            @Override
-            public void onClick(@NonNull View widget) {
-                switchOpenClose();
-            }
-
-            @Override
-            public void updateDrawState(@NonNull TextPaint ds) {
-                super.updateDrawState(ds);
-                ds.setUnderlineText(false);
-            }
-        }, 0, mOpenSuffixStr.length(), Spanned.SPAN_EXCLUSIVE_INCLUSIVE);
+        mOpenSuffixDirty = false;
+        mOpenSuffixSpan = SuffixSpans.suffixSpan(mOpenSuffixStr, false);
     }
 
     /**
      * 更新收起后缀Spannable
      */
     private void updateCloseSuffixSpan() {
-        if (TextUtils.isEmpty(mCloseSuffixStr)) {
-            mCloseSuffixSpan = null;
-            return;
-        }
-        mCloseSuffixSpan = new SpannableString(mCloseSuffixStr);
-        mCloseSuffixSpan.setSpan(new StyleSpan(android.graphics.Typeface.BOLD), 0, mCloseSuffixStr.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-        if (mCloseisRightAlign && mCloseInNewLine) {
-            AlignmentSpan alignmentSpan = new AlignmentSpan.Standard(Layout.Alignment.ALIGN_OPPOSITE);
-            mCloseSuffixSpan.setSpan(alignmentSpan, 0, mCloseSuffixStr.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-        }
-        mCloseSuffixSpan.setSpan(new ClickableSpan() {
-            @Override
-            public void onClick(@NonNull View widget) {
-                switchOpenClose();
-            }
-
-            @Override
-            public void updateDrawState(@NonNull TextPaint ds) {
-                super.updateDrawState(ds);
-                ds.setUnderlineText(false);
-            }
-        }, 0, mCloseSuffixStr.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        mCloseSuffixDirty = false;
+        mCloseSuffixSpan = SuffixSpans.suffixSpan(mCloseSuffixStr, mCloseisRightAlign && mCloseInNewLine);
     }
 
     @Override
@@ -547,12 +1708,72 @@ public class FoldableTextView extends AppCompatTextView {
         this.mOpenCloseCallback = callback;
     }
 
+    /**
+     * 设置折叠统计的监听
+     *
+     * @param listener
+     */
+    public void setFoldMetricsListener(@Nullable FoldMetricsListener listener) {
+        mFoldMetricsListener = listener;
+    }
+
+    public interface FoldMetricsListener {
+        /**
+         * 每次折叠计算完成并应用后回调
+         */
+        void onFold(FoldableTextView view, FoldMetrics metrics);
+
+        /**
+         * 展开或收起动画结束后回调
+         *
+         * @param open           是否为展开动画
+         * @param frameCount     动画执行的帧数
+         * @param durationMillis 动画实际执行的时间
+         */
+        void onAnimationEnd(FoldableTextView view, boolean open, int frameCount, long durationMillis);
+    }
+
+    public interface ToggleHandler {
+        /**
+         * 点击切换状态时调用
+         *
+         * @param expand 是否需要展开
+         * @return 是否已经处理，返回false时控件自己执行动画
+         */
+        boolean onToggle(@NonNull FoldableTextView view, boolean expand);
+    }
+
     public interface OpenAndCloseCallback {
         void onOpen();
 
         void onClose();
     }
 
+    /**
+     * 设置折叠结果缓存，默认使用全局共享的{@link FoldCache#getInstance()}
+     *
+     * @param foldCache 为null时不使用缓存
+     */
+    public void setFoldCache(@Nullable FoldCache foldCache) {
+        mFoldCache = foldCache;
+    }
+
+    /**
+     * 设置主线程空闲时预先计算折叠结果的控件宽度，例如横屏、分屏或折叠屏展开后的宽度
+     * 控件宽度变为其中之一时直接使用计算好的结果，不需要在布局时重新排版
+     * 注意：设置的{@link CharSequenceToSpannableHandler}会在executor的线程中调用
+     *
+     * @param executor   执行折叠计算的线程池，为null时不预先计算
+     * @param viewWidths 控件宽度，包含paddingLeft和paddingRight
+     */
+    public void setPrecomputeWidths(@Nullable Executor executor, int... viewWidths) {
+        mPrecomputeExecutor = executor;
+        mPrecomputeWidths = executor != null && viewWidths.length > 0 ? viewWidths.clone() : null;
+        if (mFoldResult != null) {
+            schedulePrecompute();
+        }
+    }
+
     /**
      * 设置文本内容处理
      *
@@ -560,6 +1781,83 @@ public class FoldableTextView extends AppCompatTextView {
      */
     public void setCharSequenceToSpannableHandler(CharSequenceToSpannableHandler handler) {
         mCharSequenceToSpannableHandler = handler;
+        mWidthBuckets.clear();
+        scheduleRefold();
+    }
+
+    /**
+     * 设置每个文本只调用一次文本内容处理，收起的文本从处理结果中截取，跨越截取位置的span会被截断保留
+     * 关闭时会对截取后的文本再次调用处理
+     *
+     * @param handleOnce
+     */
+    public void setHandleOnce(boolean handleOnce) {
+        if (mHandleOnce == handleOnce) {
+            return;
+        }
+        mHandleOnce = handleOnce;
+        scheduleRefold();
+    }
+
+    /**
+     * 设置超长文本只排版前缀：原文长度超过threshold时只排版足够判断是否需要收起的前缀，
+     * 收起后缀的位置和展开的高度在第一次展开时再排版全文计算。
+     * 非贪心换行（默认的HIGH_QUALITY或者开启断字）时前缀延长到段落结束，没有换行符的长文本仍然排版全文
+     *
+     * @param threshold 字符数，为0时总是排版全文
+     */
+    public void setPrefixThreshold(int threshold) {
+        if (mPrefixThreshold == threshold) {
+            return;
+        }
+        mPrefixThreshold = threshold;
+        scheduleRefold();
+    }
+
+    /**
+     * 设置分页展开：每次点击展开后缀再展示pageLines行，剩余的内容不足一页时展开全文并显示收起后缀
+     * 每次点击只排版新增的几行，适合很长的文本
+     *
+     * @param pageLines 每次展开的行数，为0时点击直接展开全文
+     */
+    public void setExpandPageLines(int pageLines) {
+        if (mExpandPageLines == pageLines) {
+            return;
+        }
+        mExpandPageLines = pageLines;
+        scheduleRefold();
+    }
+
+    /**
+     * 设置展开状态只绘制可见区域的行：只保存每一行的位置，绘制时按滚动容器中的可见区域排版相交的几行
+     * 适合在ScrollView或RecyclerView中展开上万行的文本，开启后展开状态下{@link #getText()}为空
+     *
+     * @param virtualize
+     */
+    public void setVirtualizeExpanded(boolean virtualize) {
+        if (mVirtualizeExpanded == virtualize) {
+            return;
+        }
+        mVirtualizeExpanded = virtualize;
+        if (isAttachedToWindow()) {
+            if (virtualize) {
+                getViewTreeObserver().addOnScrollChangedListener(mVirtualScrollListener);
+            } else {
+                getViewTreeObserver().removeOnScrollChangedListener(mVirtualScrollListener);
+            }
+        }
+        if (mVirtualShowing) {
+            showOpenText();
+        }
+    }
+
+    /**
+     * 设置是否允许拖动滚动文本，只影响当前控件
+     *
+     * @param canScroll
+     */
+    public void setCanScroll(boolean canScroll) {
+        mMovementMethod.setCanScroll(canScroll);
     }
 
     public interface CharSequenceToSpannableHandler {
@@ -571,6 +1869,8 @@ public class FoldableTextView extends AppCompatTextView {
         private final View mTargetView;//动画执行view
         private final int mStartHeight;//动画执行的开始高度
         private final int mEndHeight;//动画结束后的高度
+        private int mFrameCount;//动画执行的帧数
+        private long mStartMillis;//动画开始的时间
 
         ExpandCollapseAnimation(View target, int startHeight, int endHeight) {
             mTargetView = target;
@@ -581,10 +1881,24 @@ public class FoldableTextView extends AppCompatTextView {
 
         @Override
         protected void applyTransformation(float interpolatedTime, Transformation t) {
+            mFrameCount++;
             mTargetView.setScrollY(0);
             //计算出每次应该显示的高度,改变执行view的高度，实现动画
             mTargetView.getLayoutParams().height = (int) ((mEndHeight - mStartHeight) * interpolatedTime + mStartHeight);
             mTargetView.requestLayout();
         }
+
+        void resetFrameCount() {
+            mFrameCount = 0;
+            mStartMillis = SystemClock.uptimeMillis();
+        }
+
+        int getFrameCount() {
+            return mFrameCount;
+        }
+
+        long getElapsedMillis() {
+            return SystemClock.uptimeMillis() - mStartMillis;
+        }
     }
 }
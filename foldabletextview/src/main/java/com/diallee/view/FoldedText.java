@@ -0,0 +1,410 @@
+package com.diallee.view;
+
+import android.text.GetChars;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 原文[start, end) + 后缀的文本视图，不复制原文的字符和span，用于收起和展开状态的显示与测量
+ * 跨越截取位置的span会被截断；显示时TextView设置的span（选择区域、ChangeWatcher等）保存在视图自身，不影响原文
+ * 注意：原文在设置后只能在末尾追加内容，不能修改已经截取的部分
+ */
+final class FoldedText implements Spannable, GetChars {
+    private static final Object[] EMPTY_SPANS = new Object[0];
+    private static final int[] EMPTY_INTS = new int[0];
+
+    private final CharSequence mBase;
+    private final int mBaseStart;
+    // 截取的原文长度
+    private final int mBaseLength;
+    private final CharSequence mTail;
+
+    // 显示过程中其他对象设置的span，按优先级从高到低排列
+    private Object[] mSpans = EMPTY_SPANS;
+    private int[] mSpanStarts = EMPTY_INTS;
+    private int[] mSpanEnds = EMPTY_INTS;
+    private int[] mSpanFlags = EMPTY_INTS;
+    private int mSpanCount;
+
+    /**
+     * @param base  原文
+     * @param start 截取的起始位置
+     * @param end   截取的结束位置
+     * @param tail  拼接在后面的后缀，为null时不拼接
+     */
+    FoldedText(@NonNull CharSequence base, int start, int end, @Nullable CharSequence tail) {
+        mBase = base;
+        mBaseStart = start;
+        mBaseLength = end - start;
+        mTail = tail != null ? tail : "";
+    }
+
+    @Override
+    public int length() {
+        return mBaseLength + mTail.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < mBaseLength) {
+            return mBase.charAt(mBaseStart + index);
+        }
+        return mTail.charAt(index - mBaseLength);
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        if (start < mBaseLength) {
+            int baseEnd = Math.min(end, mBaseLength);
+            TextUtils.getChars(mBase, mBaseStart + start, mBaseStart + baseEnd, dest, destoff);
+            destoff += baseEnd - start;
+            start = baseEnd;
+        }
+        if (start < end) {
+            TextUtils.getChars(mTail, start - mBaseLength, end - mBaseLength, dest, destoff);
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new SpannableStringBuilder(this, start, end);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        char[] chars = new char[length()];
+        getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 合并视图自身、原文和后缀的span，与{@link SpannableStringBuilder#getSpans}一样按优先级从高到低排列，
+     * 优先级相同时依次为视图自身、原文和后缀的span
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T[] getSpans(int start, int end, Class<T> type) {
+        if (type == null) {
+            type = (Class<T>) Object.class;
+        }
+        // 第一遍统计数量，结果只分配一次
+        int count = 0;
+        for (int i = 0; i < mSpanCount; i++) {
+            if (type.isInstance(mSpans[i]) && intersects(mSpanStarts[i], mSpanEnds[i], start, end)) {
+                count++;
+            }
+        }
+        T[] baseSpans = null;
+        if (mBase instanceof Spanned && start <= mBaseLength) {
+            baseSpans = ((Spanned) mBase).getSpans(mBaseStart + Math.max(0, start),
+                    mBaseStart + Math.min(end, mBaseLength), type);
+            for (T span : baseSpans) {
+                if (isBaseSpanVisible(span, start, end)) {
+                    count++;
+                }
+            }
+        }
+        T[] tailSpans = null;
+        if (mTail instanceof Spanned && end >= mBaseLength) {
+            tailSpans = ((Spanned) mTail).getSpans(Math.max(0, start - mBaseLength), end - mBaseLength, type);
+            for (T span : tailSpans) {
+                if (isTailSpanVisible(span, start, end)) {
+                    count++;
+                }
+            }
+        }
+        T[] result = (T[]) Array.newInstance(type, count);
+        if (count == 0) {
+            return result;
+        }
+        int index = 0;
+        for (int i = 0; i < mSpanCount; i++) {
+            if (type.isInstance(mSpans[i]) && intersects(mSpanStarts[i], mSpanEnds[i], start, end)) {
+                result[index++] = (T) mSpans[i];
+            }
+        }
+        if (baseSpans != null) {
+            for (T span : baseSpans) {
+                if (isBaseSpanVisible(span, start, end)) {
+                    result[index++] = span;
+                }
+            }
+        }
+        if (tailSpans != null) {
+            for (T span : tailSpans) {
+                if (isTailSpanVisible(span, start, end)) {
+                    result[index++] = span;
+                }
+            }
+        }
+        sortByPriority(result);
+        return result;
+    }
+
+    private boolean isBaseSpanVisible(Object span, int start, int end) {
+        Spanned base = (Spanned) mBase;
+        int spanStart = base.getSpanStart(span) - mBaseStart;
+        int spanEnd = base.getSpanEnd(span) - mBaseStart;
+        return isInBase(spanStart, spanEnd) && indexOfSpan(span) < 0
+                && intersects(clampToBase(spanStart), clampToBase(spanEnd), start, end);
+    }
+
+    private boolean isTailSpanVisible(Object span, int start, int end) {
+        Spanned tail = (Spanned) mTail;
+        return indexOfSpan(span) < 0 && intersects(tail.getSpanStart(span) + mBaseLength,
+                tail.getSpanEnd(span) + mBaseLength, start, end);
+    }
+
+    /**
+     * 按优先级从高到低稳定排序，每个来源自身已经有序，通常不需要移动
+     */
+    private <T> void sortByPriority(T[] spans) {
+        int previous = Integer.MAX_VALUE;
+        boolean sorted = true;
+        for (T span : spans) {
+            int priority = getSpanFlags(span) & Spanned.SPAN_PRIORITY;
+            if (priority > previous) {
+                sorted = false;
+                break;
+            }
+            previous = priority;
+        }
+        if (sorted) {
+            return;
+        }
+        for (int i = 1; i < spans.length; i++) {
+            T span = spans[i];
+            int priority = getSpanFlags(span) & Spanned.SPAN_PRIORITY;
+            int j = i;
+            while (j > 0 && (getSpanFlags(spans[j - 1]) & Spanned.SPAN_PRIORITY) < priority) {
+                spans[j] = spans[j - 1];
+                j--;
+            }
+            spans[j] = span;
+        }
+    }
+
+    @Override
+    public int getSpanStart(Object tag) {
+        int index = indexOfSpan(tag);
+        if (index >= 0) {
+            return mSpanStarts[index];
+        }
+        if (mBase instanceof Spanned) {
+            Spanned base = (Spanned) mBase;
+            int spanStart = base.getSpanStart(tag) - mBaseStart;
+            int spanEnd = base.getSpanEnd(tag) - mBaseStart;
+            if (base.getSpanStart(tag) >= 0 && isInBase(spanStart, spanEnd)) {
+                return clampToBase(spanStart);
+            }
+        }
+        if (mTail instanceof Spanned) {
+            int spanStart = ((Spanned) mTail).getSpanStart(tag);
+            if (spanStart >= 0) {
+                return spanStart + mBaseLength;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getSpanEnd(Object tag) {
+        int index = indexOfSpan(tag);
+        if (index >= 0) {
+            return mSpanEnds[index];
+        }
+        if (mBase instanceof Spanned) {
+            Spanned base = (Spanned) mBase;
+            int spanStart = base.getSpanStart(tag) - mBaseStart;
+            int spanEnd = base.getSpanEnd(tag) - mBaseStart;
+            if (base.getSpanStart(tag) >= 0 && isInBase(spanStart, spanEnd)) {
+                return clampToBase(spanEnd);
+            }
+        }
+        if (mTail instanceof Spanned) {
+            int spanEnd = ((Spanned) mTail).getSpanEnd(tag);
+            if (spanEnd >= 0) {
+                return spanEnd + mBaseLength;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getSpanFlags(Object tag) {
+        int index = indexOfSpan(tag);
+        if (index >= 0) {
+            return mSpanFlags[index];
+        }
+        if (mBase instanceof Spanned) {
+            Spanned base = (Spanned) mBase;
+            if (base.getSpanStart(tag) >= 0 && isInBase(base.getSpanStart(tag) - mBaseStart,
+                    base.getSpanEnd(tag) - mBaseStart)) {
+                return base.getSpanFlags(tag);
+            }
+        }
+        if (mTail instanceof Spanned) {
+            return ((Spanned) mTail).getSpanFlags(tag);
+        }
+        return 0;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public int nextSpanTransition(int start, int limit, Class type) {
+        int next = limit;
+        for (int i = 0; i < mSpanCount; i++) {
+            if (type == null || type.isInstance(mSpans[i])) {
+                if (mSpanStarts[i] > start && mSpanStarts[i] < next) {
+                    next = mSpanStarts[i];
+                }
+                if (mSpanEnds[i] > start && mSpanEnds[i] < next) {
+                    next = mSpanEnds[i];
+                }
+            }
+        }
+        if (start < mBaseLength) {
+            if (mBase instanceof Spanned) {
+                int baseLimit = Math.min(next, mBaseLength);
+                next = Math.min(next, ((Spanned) mBase).nextSpanTransition(mBaseStart + start,
+                        mBaseStart + baseLimit, type) - mBaseStart);
+            }
+            // 截断的span在截取位置结束
+            next = Math.min(next, mBaseLength);
+        } else if (mTail instanceof Spanned && next > mBaseLength) {
+            next = ((Spanned) mTail).nextSpanTransition(start - mBaseLength, next - mBaseLength, type)
+                    + mBaseLength;
+        }
+        return next;
+    }
+
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        if (start < 0 || end < start || end > length()) {
+            throw new IndexOutOfBoundsException("setSpan (" + start + " ... " + end + ") ends beyond length "
+                    + length());
+        }
+        int index = indexOfSpan(what);
+        if (index >= 0) {
+            int oldStart = mSpanStarts[index];
+            int oldEnd = mSpanEnds[index];
+            mSpanStarts[index] = start;
+            mSpanEnds[index] = end;
+            mSpanFlags[index] = flags;
+            for (SpanWatcher watcher : getSpanWatchers()) {
+                watcher.onSpanChanged(this, what, oldStart, oldEnd, start, end);
+            }
+            return;
+        }
+        ensureCapacity(mSpanCount + 1);
+        // 按优先级从高到低插入，优先级相同时按设置的顺序
+        int priority = flags & Spanned.SPAN_PRIORITY;
+        int insert = mSpanCount;
+        while (insert > 0 && (mSpanFlags[insert - 1] & Spanned.SPAN_PRIORITY) < priority) {
+            insert--;
+        }
+        System.arraycopy(mSpans, insert, mSpans, insert + 1, mSpanCount - insert);
+        System.arraycopy(mSpanStarts, insert, mSpanStarts, insert + 1, mSpanCount - insert);
+        System.arraycopy(mSpanEnds, insert, mSpanEnds, insert + 1, mSpanCount - insert);
+        System.arraycopy(mSpanFlags, insert, mSpanFlags, insert + 1, mSpanCount - insert);
+        mSpans[insert] = what;
+        mSpanStarts[insert] = start;
+        mSpanEnds[insert] = end;
+        mSpanFlags[insert] = flags;
+        mSpanCount++;
+        for (SpanWatcher watcher : getSpanWatchers()) {
+            watcher.onSpanAdded(this, what, start, end);
+        }
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        int index = indexOfSpan(what);
+        if (index < 0) {
+            return;
+        }
+        int start = mSpanStarts[index];
+        int end = mSpanEnds[index];
+        mSpanCount--;
+        System.arraycopy(mSpans, index + 1, mSpans, index, mSpanCount - index);
+        System.arraycopy(mSpanStarts, index + 1, mSpanStarts, index, mSpanCount - index);
+        System.arraycopy(mSpanEnds, index + 1, mSpanEnds, index, mSpanCount - index);
+        System.arraycopy(mSpanFlags, index + 1, mSpanFlags, index, mSpanCount - index);
+        mSpans[mSpanCount] = null;
+        for (SpanWatcher watcher : getSpanWatchers()) {
+            watcher.onSpanRemoved(this, what, start, end);
+        }
+    }
+
+    private int indexOfSpan(Object span) {
+        for (int i = 0; i < mSpanCount; i++) {
+            if (mSpans[i] == span) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 只有设置在视图上的span会是SpanWatcher，原文的span不会收到通知
+     */
+    private SpanWatcher[] getSpanWatchers() {
+        List<SpanWatcher> watchers = new ArrayList<>();
+        for (int i = 0; i < mSpanCount; i++) {
+            if (mSpans[i] instanceof SpanWatcher) {
+                watchers.add((SpanWatcher) mSpans[i]);
+            }
+        }
+        return watchers.toArray(new SpanWatcher[0]);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mSpans.length) {
+            int newLength = Math.max(capacity, mSpans.length * 2);
+            mSpans = Arrays.copyOf(mSpans, newLength);
+            mSpanStarts = Arrays.copyOf(mSpanStarts, newLength);
+            mSpanEnds = Arrays.copyOf(mSpanEnds, newLength);
+            mSpanFlags = Arrays.copyOf(mSpanFlags, newLength);
+        }
+    }
+
+    /**
+     * 原文的span相对于截取起始位置的范围是否与截取的部分相交
+     */
+    private boolean isInBase(int spanStart, int spanEnd) {
+        if (spanStart == spanEnd) {
+            return spanStart >= 0 && spanStart <= mBaseLength;
+        }
+        return spanStart < mBaseLength && spanEnd > 0;
+    }
+
+    private int clampToBase(int position) {
+        return Math.max(0, Math.min(position, mBaseLength));
+    }
+
+    /**
+     * 与{@link SpannableStringBuilder#getSpans}相同的相交规则：
+     * 非空的span和非空的查找范围只在端点相接时不算相交
+     */
+    private static boolean intersects(int spanStart, int spanEnd, int start, int end) {
+        if (spanStart > end || spanEnd < start) {
+            return false;
+        }
+        if (spanStart != spanEnd && start != end) {
+            return spanStart != end && spanEnd != start;
+        }
+        return true;
+    }
+}
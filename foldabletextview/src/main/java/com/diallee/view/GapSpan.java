@@ -0,0 +1,48 @@
+package com.diallee.view;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ReplacementSpan;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 固定宽度的空白，用于将收起后缀推到最后一行的末尾
+ * 替换的是一个普通空格，复制、getText和无障碍服务得到的都是空格，不会出现占位字符
+ */
+final class GapSpan extends ReplacementSpan {
+    // 被替换的字符
+    static final String PLACEHOLDER = " ";
+
+    private final int mWidth;
+
+    GapSpan(int width) {
+        mWidth = width;
+    }
+
+    /**
+     * 在文本末尾追加指定宽度的空白
+     */
+    static void append(SpannableStringBuilder text, int width) {
+        int start = text.length();
+        text.append(PLACEHOLDER);
+        text.setSpan(new GapSpan(width), start, start + PLACEHOLDER.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+
+    @Override
+    public int getSize(@NonNull Paint paint, CharSequence text, int start, int end,
+                       @Nullable Paint.FontMetricsInt fm) {
+        if (fm != null) {
+            paint.getFontMetricsInt(fm);
+        }
+        return mWidth;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas, CharSequence text, int start, int end, float x,
+                     int top, int y, int bottom, @NonNull Paint paint) {
+    }
+}
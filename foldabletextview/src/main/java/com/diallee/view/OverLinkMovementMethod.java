@@ -1,15 +1,30 @@
 package com.diallee.view;
 
+import android.text.Layout;
 import android.text.NoCopySpan;
+import android.text.Selection;
 import android.text.Spannable;
 import android.text.method.LinkMovementMethod;
 import android.text.method.MovementMethod;
+import android.text.method.Touch;
+import android.text.style.ClickableSpan;
 import android.view.MotionEvent;
 import android.widget.TextView;
 
 public class OverLinkMovementMethod extends LinkMovementMethod {
 
-	public static boolean canScroll = false;
+	// 是否允许拖动滚动文本，每个控件单独设置
+	private boolean canScroll = false;
+	// 最近一次触摸的排版对应的span索引
+	private ClickableSpanIndex spanIndex;
+
+	public void setCanScroll(boolean canScroll) {
+		this.canScroll = canScroll;
+	}
+
+	public boolean canScroll() {
+		return canScroll;
+	}
 
 	@Override
 	public boolean onTouchEvent(TextView widget, Spannable buffer, MotionEvent event) {
@@ -21,9 +36,30 @@ public class OverLinkMovementMethod extends LinkMovementMethod {
 			}
 		}
 
-		return super.onTouchEvent(widget, buffer, event);
+		Layout layout = widget.getLayout();
+		if ((action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_DOWN) && layout != null) {
+			// 通过按行的索引查找点击的span，不再在整个文本中查找
+			spanIndex = ClickableSpanIndex.obtain(spanIndex, layout, buffer);
+			int x = (int) event.getX() - widget.getTotalPaddingLeft() + widget.getScrollX();
+			int y = (int) event.getY() - widget.getTotalPaddingTop() + widget.getScrollY();
+			ClickableSpan link = spanIndex.find(x, y);
+			if (link != null) {
+				if (action == MotionEvent.ACTION_UP) {
+					link.onClick(widget);
+				} else {
+					Selection.setSelection(buffer, buffer.getSpanStart(link), buffer.getSpanEnd(link));
+				}
+				return true;
+			}
+			Selection.removeSelection(buffer);
+		}
+
+		return Touch.onTouchEvent(widget, buffer, event);
 	}
 
+	/**
+	 * 共享的实例，不同控件的设置会互相影响，控件应使用各自的实例
+	 */
 	public static MovementMethod getInstance() {
 		if (sInstance == null)
 			sInstance = new OverLinkMovementMethod();
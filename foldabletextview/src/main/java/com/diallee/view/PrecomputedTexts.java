@@ -0,0 +1,64 @@
+package com.diallee.view;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.text.PrecomputedText;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.text.PrecomputedTextCompat;
+
+/**
+ * 识别预先计算过测量结果的文本（{@link PrecomputedText}和{@link PrecomputedTextCompat}）
+ * 测量参数与排版配置一致时直接排版其中的PrecomputedText，StaticLayout复用已经测量的段落，不再重新测量字形
+ */
+final class PrecomputedTexts {
+
+    private PrecomputedTexts() {
+    }
+
+    static boolean isPrecomputed(@Nullable CharSequence text) {
+        return text instanceof PrecomputedTextCompat
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && text instanceof PrecomputedText);
+    }
+
+    /**
+     * 返回可以复用测量结果的PrecomputedText，并记录是否命中
+     *
+     * @return 不是预先计算的文本，或者测量参数与配置不一致时返回null
+     */
+    @Nullable
+    static CharSequence obtain(@NonNull CharSequence text, @NonNull FoldConfig config) {
+        if (!isPrecomputed(text)) {
+            return null;
+        }
+        CharSequence precomputed = match(text, config);
+        if (precomputed != null) {
+            FoldStatistics.getInstance().countPrecomputedHit();
+        } else {
+            FoldStatistics.getInstance().countPrecomputedMiss();
+        }
+        return precomputed;
+    }
+
+    /**
+     * 与{@link #obtain}相同但不记录是否命中
+     */
+    @SuppressLint("NewApi")
+    @Nullable
+    static CharSequence match(@NonNull CharSequence text, @NonNull FoldConfig config) {
+        // PrecomputedTextCompat内部的PrecomputedText不是公开的API，Q及以上测量参数与控件一致时
+        // FoldableTextView会通过TextViewCompat.setPrecomputedText转为PrecomputedText，这里只会是未命中；
+        // P上setPrecomputedText不转换，按未命中处理；更低版本的PrecomputedTextCompat只是文本的副本，没有可以复用的测量结果
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || !(text instanceof PrecomputedText)) {
+            return null;
+        }
+        PrecomputedText precomputed = (PrecomputedText) text;
+        PrecomputedText.Params params = precomputed.getParams();
+        if (!config.matchesMetrics(params.getTextPaint(), params.getBreakStrategy(),
+                params.getHyphenationFrequency())) {
+            return null;
+        }
+        return precomputed;
+    }
+}
@@ -0,0 +1,175 @@
+package com.diallee.view;
+
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.style.AlignmentSpan;
+import android.text.style.ClickableSpan;
+import android.text.style.StyleSpan;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 所有控件共用的不可变后缀文本，相同的后缀只创建一次，重新折叠时不再分配新的span
+ * 点击后缀的ClickableSpan通过被点击的控件切换状态，不持有任何控件
+ */
+final class SuffixSpans {
+    // 每种后缀保留的数量
+    private static final int MAX_SPANS = 16;
+    // 保留的后缀组合数量
+    private static final int MAX_TAILS = 32;
+
+    private static final int TAIL_CLOSE = 0;
+    private static final int TAIL_OPEN = 1;
+    private static final int TAIL_OPEN_NEW_LINE = 2;
+
+    private static final StyleSpan BOLD_SPAN = new StyleSpan(Typeface.BOLD);
+    private static final AlignmentSpan ALIGN_OPPOSITE_SPAN = new AlignmentSpan.Standard(Layout.Alignment.ALIGN_OPPOSITE);
+    private static final ClickableSpan TOGGLE_SPAN = new ClickableSpan() {
+        @Override
+        public void onClick(@NonNull View widget) {
+            if (widget instanceof FoldableTextView) {
+                ((FoldableTextView) widget).switchOpenClose();
+            }
+        }
+
+        @Override
+        public void updateDrawState(@NonNull TextPaint ds) {
+            super.updateDrawState(ds);
+            ds.setUnderlineText(false);
+        }
+    };
+
+    // 只包含影响排版的样式，用于测量
+    private static final Map<String, Spanned> sMeasureSpans = createLruMap();
+    // 用于显示，可以点击
+    private static final Map<String, Spanned> sSuffixSpans = createLruMap();
+    // 用于显示，可以点击并对齐到右侧
+    private static final Map<String, Spanned> sAlignRightSuffixSpans = createLruMap();
+
+    // 拼接好的后缀组合，按后缀对象、类型和空白宽度查找，超过容量时依次替换
+    private static final Object[] sTailSuffixes = new Object[MAX_TAILS];
+    private static final int[] sTailTypes = new int[MAX_TAILS];
+    private static final int[] sTailGaps = new int[MAX_TAILS];
+    private static final CharSequence[] sTails = new CharSequence[MAX_TAILS];
+    private static int sNextTail;
+
+    private SuffixSpans() {
+    }
+
+    private static Map<String, Spanned> createLruMap() {
+        return new LinkedHashMap<String, Spanned>(0, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Spanned> eldest) {
+                return size() > MAX_SPANS;
+            }
+        };
+    }
+
+    /**
+     * 用于测量的后缀：加粗
+     */
+    @Nullable
+    static Spanned measureSpan(@Nullable String suffix) {
+        if (TextUtils.isEmpty(suffix)) {
+            return null;
+        }
+        synchronized (sMeasureSpans) {
+            Spanned span = sMeasureSpans.get(suffix);
+            if (span == null) {
+                SpannableString suffixSpan = new SpannableString(suffix);
+                suffixSpan.setSpan(BOLD_SPAN, 0, suffix.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                span = new SpannedString(suffixSpan);
+                sMeasureSpans.put(suffix, span);
+            }
+            return span;
+        }
+    }
+
+    /**
+     * 用于显示的后缀：加粗，点击切换展开和收起状态
+     *
+     * @param alignRight 是否对齐到右侧，只用于单独一行的收起后缀
+     */
+    @Nullable
+    static Spanned suffixSpan(@Nullable String suffix, boolean alignRight) {
+        if (TextUtils.isEmpty(suffix)) {
+            return null;
+        }
+        Map<String, Spanned> spans = alignRight ? sAlignRightSuffixSpans : sSuffixSpans;
+        synchronized (spans) {
+            Spanned span = spans.get(suffix);
+            if (span == null) {
+                SpannableString suffixSpan = new SpannableString(suffix);
+                suffixSpan.setSpan(BOLD_SPAN, 0, suffix.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                if (alignRight) {
+                    suffixSpan.setSpan(ALIGN_OPPOSITE_SPAN, 0, suffix.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                suffixSpan.setSpan(TOGGLE_SPAN, 0, suffix.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                span = new SpannedString(suffixSpan);
+                spans.put(suffix, span);
+            }
+            return span;
+        }
+    }
+
+    /**
+     * 收起状态末尾的省略号 + 展开后缀
+     */
+    @NonNull
+    static CharSequence closeTail(@Nullable CharSequence openSuffix) {
+        return tail(TAIL_CLOSE, openSuffix, 0);
+    }
+
+    /**
+     * 展开状态末尾的换行或空白 + 收起后缀
+     *
+     * @param newLine 收起后缀是否另起一行
+     * @param gap     收起后缀前的空白宽度
+     */
+    @NonNull
+    static CharSequence openTail(@Nullable CharSequence closeSuffix, boolean newLine, int gap) {
+        if (closeSuffix == null) {
+            return "";
+        }
+        return tail(newLine ? TAIL_OPEN_NEW_LINE : TAIL_OPEN, closeSuffix, gap);
+    }
+
+    private static synchronized CharSequence tail(int type, @Nullable CharSequence suffix, int gap) {
+        for (int i = 0; i < MAX_TAILS; i++) {
+            if (sTails[i] != null && sTailSuffixes[i] == suffix && sTailTypes[i] == type && sTailGaps[i] == gap) {
+                return sTails[i];
+            }
+        }
+        FoldStatistics.getInstance().countSpannable();
+        SpannableStringBuilder tail = new SpannableStringBuilder();
+        if (type == TAIL_CLOSE) {
+            tail.append(FoldableTextView.ELLIPSIS_STRING);
+        } else if (type == TAIL_OPEN_NEW_LINE) {
+            tail.append("\n");
+        }
+        if (gap > 0) {
+            GapSpan.append(tail, gap);
+        }
+        if (suffix != null) {
+            tail.append(suffix);
+        }
+        int index = sNextTail;
+        sNextTail = (sNextTail + 1) % MAX_TAILS;
+        sTailSuffixes[index] = suffix;
+        sTailTypes[index] = type;
+        sTailGaps[index] = gap;
+        sTails[index] = new SpannedString(tail);
+        return sTails[index];
+    }
+}
@@ -0,0 +1,188 @@
+package com.diallee.view;
+
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.style.ClickableSpan;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * 展开状态的虚拟化排版：只用两个int数组保存每一行的起始位置和顶部坐标，不持有整个文本的Layout
+ * 绘制时只排版与可见区域相交的段落，可见区域移出已排版的范围后再重新排版
+ * 排版的范围总是从段落开头开始到段落结尾结束，换行位置和LeadingMarginSpan等段落样式与排版全文一致
+ */
+final class VirtualTextLayout {
+    // 分块计算换行时每块最少的字符数，块在换行符之后结束
+    private static final int BLOCK_CHARS = 4096;
+    // 可见区域上下额外排版的高度与可见高度的比例，减少滚动时重新排版的次数
+    private static final float OVERSCAN = 0.5f;
+
+    private final CharSequence mText;
+    private final FoldConfig mConfig;
+    // 第i行的起始位置和顶部坐标，下标为行数的元素分别为文本长度和总高度
+    private int[] mLineStarts = new int[64];
+    private int[] mLineTops = new int[64];
+    private int mLineCount;
+
+    // 当前排版的行范围[mWindowFirst, mWindowLast)，两端都在段落的边界
+    @Nullable
+    private Layout mWindow;
+    private int mWindowFirst, mWindowLast;
+
+    VirtualTextLayout(@NonNull CharSequence text, @NonNull FoldConfig config) {
+        mText = text;
+        mConfig = config;
+        computeLines();
+    }
+
+    /**
+     * 按段落分块排版计算每一行的位置，排版结果用完即丢弃
+     */
+    private void computeLines() {
+        int length = mText.length();
+        int blockStart = 0;
+        int top = 0;
+        while (blockStart < length) {
+            int blockEnd = Math.min(length, blockStart + BLOCK_CHARS);
+            // 块在段落结尾处结束，保证换行与排版全文一致
+            while (blockEnd < length && mText.charAt(blockEnd - 1) != '\n') {
+                blockEnd++;
+            }
+            Layout layout = mConfig.createLayout(new FoldedText(mText, blockStart, blockEnd, null));
+            int lines = layout.getLineCount();
+            if (blockEnd < length) {
+                // 以换行符结束的块最后是一个空行，属于下一块
+                lines--;
+            }
+            for (int i = 0; i < lines; i++) {
+                addLine(blockStart + layout.getLineStart(i), top + layout.getLineTop(i));
+            }
+            top += layout.getLineTop(lines);
+            blockStart = blockEnd;
+        }
+        ensureCapacity(mLineCount + 1);
+        mLineStarts[mLineCount] = length;
+        mLineTops[mLineCount] = top;
+    }
+
+    private void addLine(int start, int top) {
+        ensureCapacity(mLineCount + 1);
+        mLineStarts[mLineCount] = start;
+        mLineTops[mLineCount] = top;
+        mLineCount++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mLineStarts.length) {
+            int newLength = Math.max(capacity, mLineStarts.length * 2);
+            mLineStarts = Arrays.copyOf(mLineStarts, newLength);
+            mLineTops = Arrays.copyOf(mLineTops, newLength);
+        }
+    }
+
+    int getHeight() {
+        return mLineTops[mLineCount];
+    }
+
+    int getLineCount() {
+        return mLineCount;
+    }
+
+    /**
+     * 二分查找纵坐标所在的行
+     */
+    private int getLineForVertical(int y) {
+        int low = 0;
+        int high = mLineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mLineTops[mid] <= y) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 第line行是否是段落的第一行，最后一行之后的位置也算作段落边界
+     */
+    private boolean isParagraphStart(int line) {
+        return line <= 0 || line >= mLineCount || mText.charAt(mLineStarts[line] - 1) == '\n';
+    }
+
+    /**
+     * 可见区域是否超出了已排版的行范围
+     *
+     * @param top    可见区域的顶部，相对于文本内容
+     * @param bottom 可见区域的底部，相对于文本内容
+     */
+    boolean needsLayout(int top, int bottom) {
+        if (mLineCount == 0) {
+            return false;
+        }
+        return mWindow == null || getLineForVertical(top) < mWindowFirst
+                || getLineForVertical(bottom) >= mWindowLast;
+    }
+
+    /**
+     * 只绘制与可见区域相交的行
+     *
+     * @param paint  绘制使用的画笔，与排版配置的测量结果一致并设置了当前的文字颜色
+     * @param top    可见区域的顶部，相对于文本内容
+     * @param bottom 可见区域的底部，相对于文本内容
+     */
+    void draw(@NonNull Canvas canvas, @NonNull TextPaint paint, int top, int bottom) {
+        if (mLineCount == 0) {
+            return;
+        }
+        if (needsLayout(top, bottom) || mWindow.getPaint() != paint) {
+            int overscan = (int) ((bottom - top) * OVERSCAN);
+            mWindowFirst = getLineForVertical(top - overscan);
+            mWindowLast = getLineForVertical(bottom + overscan) + 1;
+            // 扩展到完整的段落，从段落中间开始排版时换行位置会与排版全文不同
+            while (!isParagraphStart(mWindowFirst)) {
+                mWindowFirst--;
+            }
+            while (!isParagraphStart(mWindowLast)) {
+                mWindowLast++;
+            }
+            mWindow = mConfig.createLayout(new FoldedText(mText, mLineStarts[mWindowFirst],
+                    mLineStarts[mWindowLast], null), paint);
+        }
+        canvas.save();
+        canvas.translate(0, mLineTops[mWindowFirst]);
+        mWindow.draw(canvas);
+        canvas.restore();
+    }
+
+    /**
+     * 查找坐标处的ClickableSpan，只在已排版的行范围内查找
+     *
+     * @param x 相对于文本内容的横坐标
+     * @param y 相对于文本内容的纵坐标
+     */
+    @Nullable
+    ClickableSpan findClickableSpan(float x, float y) {
+        if (mWindow == null || !(mText instanceof Spanned) || y < 0 || y >= getHeight()) {
+            return null;
+        }
+        int line = getLineForVertical((int) y);
+        if (line < mWindowFirst || line >= mWindowLast) {
+            return null;
+        }
+        int windowLine = line - mWindowFirst;
+        if (x < mWindow.getLineLeft(windowLine) || x > mWindow.getLineRight(windowLine)) {
+            return null;
+        }
+        int offset = mLineStarts[mWindowFirst] + mWindow.getOffsetForHorizontal(windowLine, x);
+        ClickableSpan[] spans = ((Spanned) mText).getSpans(offset, offset, ClickableSpan.class);
+        return spans.length > 0 ? spans[0] : null;
+    }
+}
@@ -0,0 +1,160 @@
+package com.diallee.view;
+
+import android.app.Activity;
+import android.os.Build;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 二分查找的截取位置与原来每次去掉一个字符的循环结果一致
+ * 使用{@link ShadowGreedyStaticLayout}按等宽字符换行，每个字符宽度为1
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P, shadows = ShadowGreedyStaticLayout.class)
+public class ClosePositionTest {
+    private static final char[] ALPHABET = {'a', 'b', 'c', ' ', ' ', '中', '\n'};
+    private static final String OPEN_SUFFIX = "展开";
+
+    private Activity mActivity;
+    private FrameLayout mParent;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.setupActivity(Activity.class);
+        mParent = new FrameLayout(mActivity);
+        mActivity.setContentView(mParent);
+    }
+
+    /**
+     * 按宽度测量并布局，返回显示的文本
+     */
+    private String fold(String text, int width, int maxLines) {
+        FoldableTextView view = new FoldableTextView(mActivity);
+        view.setHasAnimation(false);
+        view.setMaxLines(maxLines);
+        view.setText(text);
+        mParent.removeAllViews();
+        mParent.addView(view, new FrameLayout.LayoutParams(width, ViewGroup.LayoutParams.WRAP_CONTENT));
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        return view.getText().toString();
+    }
+
+    private static Layout layout(CharSequence text, TextPaint paint, int width) {
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width).build();
+    }
+
+    private static String closeText(String text, int closePos) {
+        return text.substring(0, closePos) + FoldableTextView.ELLIPSIS_STRING + OPEN_SUFFIX;
+    }
+
+    private static boolean fits(String text, int closePos, TextPaint paint, int width, int maxLines) {
+        return layout(closeText(text, closePos), paint, width).getLineCount() <= maxLines;
+    }
+
+    /**
+     * 原来的算法：从第maxLines行的结尾开始每次去掉一个字符，直到拼接省略号和展开后缀后不超过maxLines行
+     *
+     * @return 截取位置，原文不超过maxLines行时返回-1
+     */
+    private static int shrinkLoop(String text, TextPaint paint, int width, int maxLines) {
+        Layout layout = layout(text, paint, width);
+        if (layout.getLineCount() <= maxLines) {
+            return -1;
+        }
+        int closePos = Math.min(layout.getLineEnd(maxLines - 1), text.length());
+        while (closePos > 0 && !fits(text, closePos, paint, width, maxLines)) {
+            closePos--;
+        }
+        return closePos;
+    }
+
+    /**
+     * 截取位置越大越难放下时二分查找与逐个字符查找的结果相同；
+     * 按单词换行时省略号会和前面的单词连在一起换行，更长的前缀可能反而放得下，
+     * 这时二分查找的结果仍然放得下，但可能比逐个字符查找的结果短
+     */
+    private void assertSameAsShrinkLoop(String text, int width, int maxLines) {
+        TextPaint paint = new FoldableTextView(mActivity).getPaint();
+        String message = "text=\"" + text + "\" width=" + width + " maxLines=" + maxLines;
+        int expected = shrinkLoop(text, paint, width, maxLines);
+        String actual = fold(text, width, maxLines);
+        if (expected < 0) {
+            assertEquals(message, text, actual);
+            return;
+        }
+        boolean monotonic = true;
+        boolean fit = true;
+        for (int closePos = 0; closePos <= expected; closePos++) {
+            boolean closeFits = fits(text, closePos, paint, width, maxLines);
+            monotonic &= fit || !closeFits;
+            fit = closeFits;
+        }
+        if (monotonic) {
+            assertEquals(message, closeText(text, expected), actual);
+        } else {
+            int closePos = actual.length() - FoldableTextView.ELLIPSIS_STRING.length() - OPEN_SUFFIX.length();
+            assertEquals(message, closeText(text, closePos), actual);
+            assertTrue(message, closePos <= expected);
+            assertTrue(message, fits(text, closePos, paint, width, maxLines));
+        }
+    }
+
+    @Test
+    public void matchesShrinkLoopOnRandomTexts() {
+        Random random = new Random(20201017);
+        int[] widths = {5, 8, 13};
+        for (int i = 0; i < 400; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = 1 + random.nextInt(60);
+            for (int j = 0; j < length; j++) {
+                text.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+            assertSameAsShrinkLoop(text.toString(), widths[random.nextInt(widths.length)],
+                    1 + random.nextInt(3));
+        }
+    }
+
+    @Test
+    public void ellipsisWrappedWithLastWord() {
+        // " acac…展开"中省略号跟着"acac"换到第二行放不下，多留一个"中"反而能在"中"前面换行
+        String text = " acac中 c中中bb中中a  b bb中\n\nb  bb a \n";
+        assertSameAsShrinkLoop(text, 5, 2);
+        assertEquals(" aca" + FoldableTextView.ELLIPSIS_STRING + OPEN_SUFFIX, fold(text, 5, 2));
+    }
+
+    @Test
+    public void keepsLineEndWhenSuffixFits() {
+        // 第一行只有6个字符，后面还能放下省略号和展开后缀
+        assertEquals("abcde " + FoldableTextView.ELLIPSIS_STRING + OPEN_SUFFIX,
+                fold("abcde fghijklmnopqrstuvwxyz", 12, 1));
+    }
+
+    @Test
+    public void closePositionZeroWhenSuffixAloneOverflows() {
+        // 省略号和展开后缀需要3个字符的宽度，一行只能放下2个
+        assertEquals(FoldableTextView.ELLIPSIS_STRING + OPEN_SUFFIX, fold("abcdefgh", 2, 1));
+    }
+
+    @Test
+    public void notExpandableWhenTextFits() {
+        assertEquals("abc def", fold("abc def", 10, 1));
+    }
+}
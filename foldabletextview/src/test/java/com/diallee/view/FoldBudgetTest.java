@@ -0,0 +1,379 @@
+package com.diallee.view;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.os.Build;
+import android.text.Editable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.text.style.ClickableSpan;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 各个场景的开销预算：创建的StaticLayout数量、文本处理器的调用次数、requestLayout次数和创建的SpannableStringBuilder数量
+ * 通过{@link FoldStatistics}的全局计数统计，超过预算时说明有改动引入了多余的排版、布局或拷贝
+ * 使用{@link ShadowGreedyStaticLayout}按每个字符宽度为1换行，宽度{@link #VIEW_WIDTH}即每行的字符数
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P, shadows = ShadowGreedyStaticLayout.class)
+public class FoldBudgetTest {
+    private static final int VIEW_WIDTH = 30;
+    private static final int NARROW_WIDTH = 20;
+    private static final String LONG_TEXT;
+
+    static {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append("Flutter是谷歌的移动UI框架，可以快速在iOS和Android上构建高质量的原生用户界面。\n");
+        }
+        LONG_TEXT = text.toString();
+    }
+
+    // 在调用线程中直接执行异步折叠
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private FrameLayout mParent;
+    private FoldCache mFoldCache;
+    private final FoldStatistics mStatistics = FoldStatistics.getInstance();
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        mParent = new FrameLayout(activity);
+        activity.setContentView(mParent);
+        // 与真机一致，post的任务在下一帧（idle）执行，而不是立即执行
+        ShadowLooper.pauseMainLooper();
+        mFoldCache = new FoldCache(64, 1024 * 1024);
+        mStatistics.reset();
+        mStatistics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        mStatistics.setEnabled(false);
+        mStatistics.reset();
+    }
+
+    private FoldableTextView createView() {
+        FoldableTextView view = new FoldableTextView(mParent.getContext());
+        view.setHasAnimation(false);
+        view.setMaxLines(3);
+        view.setFoldCache(mFoldCache);
+        mParent.addView(view, new FrameLayout.LayoutParams(VIEW_WIDTH, ViewGroup.LayoutParams.WRAP_CONTENT));
+        return view;
+    }
+
+    /**
+     * 按LayoutParams的宽度测量布局，与父布局的布局过程一致
+     */
+    private static void layout(View view) {
+        int width = view.getLayoutParams().width;
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * 测量布局后执行下一帧的任务
+     */
+    private static void frame(View view) {
+        layout(view);
+        idle();
+    }
+
+    private static void idle() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    /**
+     * 从当前位置开始统计
+     */
+    private void startCounting() {
+        mStatistics.reset();
+    }
+
+    /**
+     * 显示的是截取后的收起文本
+     */
+    private static void assertCollapsed(FoldableTextView view) {
+        assertTrue(view.getText().length() < LONG_TEXT.length());
+    }
+
+    /**
+     * 显示的是原文和收起后缀
+     */
+    private static void assertExpanded(FoldableTextView view) {
+        assertTrue(view.getText().toString().startsWith(LONG_TEXT));
+    }
+
+    private void assertBudget(String scenario, int layouts, int handlers, int requestLayouts, int spannables) {
+        long actualLayouts = mStatistics.getTotalLayoutCount();
+        long actualHandlers = mStatistics.getTotalHandlerCount();
+        long actualRequestLayouts = mStatistics.getTotalRequestLayoutCount();
+        long actualSpannables = mStatistics.getTotalSpannableCount();
+        String message = scenario + ": layouts=" + actualLayouts + "/" + layouts
+                + " handlers=" + actualHandlers + "/" + handlers
+                + " requestLayouts=" + actualRequestLayouts + "/" + requestLayouts
+                + " spannables=" + actualSpannables + "/" + spannables;
+        assertTrue(message, actualLayouts <= layouts);
+        assertTrue(message, actualHandlers <= handlers);
+        assertTrue(message, actualRequestLayouts <= requestLayouts);
+        assertTrue(message, actualSpannables <= spannables);
+    }
+
+    @Test
+    public void bind() {
+        FoldableTextView view = createView();
+        frame(view);
+        startCounting();
+        view.setText(LONG_TEXT);
+        frame(view);
+        assertCollapsed(view);
+        assertBudget("bind", 4, 0, 2, 0);
+    }
+
+    @Test
+    public void rebindWithCacheHit() {
+        FoldableTextView first = createView();
+        first.setText(LONG_TEXT);
+        frame(first);
+
+        FoldableTextView view = createView();
+        frame(view);
+        startCounting();
+        view.setText(LONG_TEXT);
+        frame(view);
+        // 命中折叠结果缓存，不排版
+        assertCollapsed(view);
+        assertBudget("rebind", 0, 0, 2, 0);
+    }
+
+    @Test
+    public void widthChange() {
+        FoldableTextView view = createView();
+        view.setText(LONG_TEXT);
+        frame(view);
+        String wideText = view.getText().toString();
+        startCounting();
+        view.getLayoutParams().width = NARROW_WIDTH;
+        view.requestLayout();
+        frame(view);
+        assertCollapsed(view);
+        assertTrue(view.getText().length() < wideText.length());
+        assertBudget("widthChange", 10, 0, 2, 0);
+    }
+
+    @Test
+    public void toggle() {
+        FoldableTextView view = createView();
+        view.setText(LONG_TEXT);
+        frame(view);
+        startCounting();
+        view.toggleState();
+        frame(view);
+        assertExpanded(view);
+        view.toggleState();
+        frame(view);
+        assertCollapsed(view);
+        assertBudget("toggle", 0, 0, 4, 0);
+    }
+
+    @Test
+    public void suffixChange() {
+        FoldableTextView view = createView();
+        view.setText(LONG_TEXT);
+        frame(view);
+        startCounting();
+        view.setOpenSuffix("全文");
+        view.setOpenSuffixColor(Color.RED);
+        view.setCloseSuffix("收起全文");
+        view.setCloseSuffixColor(Color.BLUE);
+        view.setText(LONG_TEXT);
+        frame(view);
+        assertCollapsed(view);
+        assertTrue(view.getText().toString().endsWith("全文"));
+        assertBudget("suffixChange", 4, 0, 2, 4);
+    }
+
+    @Test
+    public void closeSuffixPlacements() {
+        boolean[] values = {false, true};
+        for (boolean closeAlignRight : values) {
+            for (boolean closeInNewLine : values) {
+                String scenario = "closeAlignRight=" + closeAlignRight + " closeInNewLine=" + closeInNewLine;
+                FoldableTextView view = createView();
+                view.setCloseAlignRight(closeAlignRight);
+                view.setCloseInNewLine(closeInNewLine);
+                frame(view);
+                startCounting();
+                view.setText(LONG_TEXT);
+                frame(view);
+                assertCollapsed(view);
+                view.toggleState();
+                frame(view);
+                assertExpanded(view);
+                assertTrue(scenario, view.getText().toString().endsWith("收起"));
+                view.toggleState();
+                frame(view);
+                assertCollapsed(view);
+                // 右对齐且不换行时需要额外排版一次测量间距
+                assertBudget(scenario, closeAlignRight && !closeInNewLine ? 5 : 4, 0, 6,
+                        closeAlignRight && !closeInNewLine ? 2 : 1);
+                mParent.removeView(view);
+            }
+        }
+    }
+
+    @Test
+    public void setTextAsync() {
+        FoldableTextView view = createView();
+        frame(view);
+        startCounting();
+        view.setTextAsync(LONG_TEXT, DIRECT);
+        idle();
+        frame(view);
+        assertCollapsed(view);
+        assertBudget("setTextAsync", 4, 0, 3, 0);
+    }
+
+    @Test
+    public void appendText() {
+        FoldableTextView view = createView();
+        view.setText(LONG_TEXT);
+        frame(view);
+        startCounting();
+        for (int i = 0; i < 10; i++) {
+            view.appendText("追加的内容。");
+            frame(view);
+        }
+        // 收起状态已经饱和，追加内容不排版也不重新布局
+        assertCollapsed(view);
+        assertBudget("appendText", 0, 0, 0, 0);
+    }
+
+    @Test
+    public void appendTextWhileExpanded() {
+        FoldableTextView view = createView();
+        view.setText(LONG_TEXT);
+        frame(view);
+        view.toggleState();
+        frame(view);
+        final int[] afterTextChanged = new int[1];
+        view.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                afterTextChanged[0]++;
+            }
+        });
+        StringBuilder expected = new StringBuilder(LONG_TEXT);
+        startCounting();
+        for (int i = 0; i < 10; i++) {
+            view.appendText("追加的内容。");
+            expected.append("追加的内容。");
+            frame(view);
+        }
+        // 第一次追加时复制一份原文显示，之后在原处修改，TextWatcher每次都收到通知
+        String text = view.getText().toString();
+        assertTrue(text.startsWith(expected.toString()));
+        assertTrue(text.endsWith("收起"));
+        assertEquals(10, afterTextChanged[0]);
+        // 每次追加只排版最后一段和收起后缀；TextView自身的ChangeWatcher检查高度变化，每次最多请求两次布局
+        assertBudget("appendTextWhileExpanded", 12, 0, 20, 3);
+        view.toggleState();
+        frame(view);
+        assertCollapsed(view);
+    }
+
+    @Test
+    public void handlerCalledOnceWithHandleOnce() {
+        FoldableTextView view = createView();
+        view.setHandleOnce(true);
+        view.setCharSequenceToSpannableHandler(new FoldableTextView.CharSequenceToSpannableHandler() {
+            @Override
+            public SpannableStringBuilder charSequenceToSpannable(CharSequence charSequence) {
+                return new SpannableStringBuilder(charSequence);
+            }
+        });
+        frame(view);
+        startCounting();
+        view.setText(LONG_TEXT);
+        frame(view);
+        view.toggleState();
+        frame(view);
+        assertExpanded(view);
+        view.toggleState();
+        frame(view);
+        assertCollapsed(view);
+        // 展开和收起都从处理后的文本截取，不再调用handler
+        assertBudget("handleOnce", 4, 1, 6, 4);
+    }
+
+    @Test
+    public void warmRebindCreatesNoSpannableCopies() {
+        String otherText = "RecyclerView" + LONG_TEXT;
+        FoldableTextView view = createView();
+        view.setText(LONG_TEXT);
+        frame(view);
+        view.setText(otherText);
+        frame(view);
+        // 两段文本都已经在缓存中，后缀复用共享的实例，反复绑定不再创建SpannableStringBuilder和StaticLayout
+        startCounting();
+        for (int i = 0; i < 5; i++) {
+            view.setText(LONG_TEXT);
+            frame(view);
+            view.setText(otherText);
+            frame(view);
+        }
+        assertCollapsed(view);
+        assertBudget("warmRebind", 0, 0, 20, 0);
+    }
+
+    @Test
+    public void suffixSpansSharedAcrossViews() {
+        FoldableTextView first = createView();
+        first.setText(LONG_TEXT);
+        frame(first);
+        FoldableTextView second = createView();
+        second.setText(LONG_TEXT);
+        frame(second);
+        assertSame(findToggleSpan(first), findToggleSpan(second));
+    }
+
+    private static ClickableSpan findToggleSpan(FoldableTextView view) {
+        Spanned text = (Spanned) view.getText();
+        ClickableSpan[] spans = text.getSpans(0, text.length(), ClickableSpan.class);
+        assertEquals(1, spans.length);
+        return spans[0];
+    }
+}
@@ -0,0 +1,119 @@
+package com.diallee.view;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 写入文件的折叠结果在重新创建缓存后可以读回，版本号改变或文件损坏时丢弃
+ */
+public class FoldDiskCacheTest {
+    // 在调用线程中直接执行读写，创建缓存后即加载完成
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void assertSameResult(FoldResult expected, FoldResult actual) {
+        assertNotNull(actual);
+        assertEquals(expected.expandable, actual.expandable);
+        assertEquals(expected.closePosition, actual.closePosition);
+        assertEquals(expected.closeHeight, actual.closeHeight);
+        assertEquals(expected.openHeight, actual.openHeight);
+        assertEquals(expected.closeSuffixMode, actual.closeSuffixMode);
+        assertEquals(expected.closeSuffixGap, actual.closeSuffixGap);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = folder.newFile("fold");
+        long textHash = FoldDiskCache.hashText("Flutter是谷歌的移动UI框架");
+        FoldResult inline = new FoldResult(true, 42, 120, 360, FoldResult.CLOSE_SUFFIX_INLINE, 17);
+        FoldResult deferred = new FoldResult(true, 7, 60, FoldResult.UNKNOWN_HEIGHT,
+                FoldResult.CLOSE_SUFFIX_DEFERRED, 0);
+
+        FoldDiskCache cache = new FoldDiskCache(file, "1", 16, DIRECT);
+        assertTrue(cache.isLoaded());
+        cache.put(textHash, 1, inline);
+        cache.put(textHash, 2, deferred);
+        cache.put(textHash + 1, 1, FoldResult.NOT_EXPANDABLE);
+
+        FoldDiskCache reopened = new FoldDiskCache(file, "1", 16, DIRECT);
+        assertEquals(3, reopened.size());
+        assertSameResult(inline, reopened.get(textHash, 1));
+        assertSameResult(deferred, reopened.get(textHash, 2));
+        assertSame(FoldResult.NOT_EXPANDABLE, reopened.get(textHash + 1, 1));
+        assertNull(reopened.get(textHash, 3));
+    }
+
+    @Test
+    public void laterRecordWins() throws IOException {
+        File file = folder.newFile("fold");
+        FoldDiskCache cache = new FoldDiskCache(file, "1", 16, DIRECT);
+        cache.put(1, 1, new FoldResult(true, 10, 100, 200, FoldResult.CLOSE_SUFFIX_NEW_LINE, 0));
+        FoldResult updated = new FoldResult(true, 11, 100, 200, FoldResult.CLOSE_SUFFIX_INLINE, 3);
+        cache.put(1, 1, updated);
+
+        FoldDiskCache reopened = new FoldDiskCache(file, "1", 16, DIRECT);
+        assertEquals(1, reopened.size());
+        assertSameResult(updated, reopened.get(1, 1));
+    }
+
+    @Test
+    public void keepsMostRecentEntries() throws IOException {
+        File file = folder.newFile("fold");
+        FoldDiskCache cache = new FoldDiskCache(file, "1", 4, DIRECT);
+        for (int i = 0; i < 20; i++) {
+            cache.put(i, 0, new FoldResult(true, i, 10, 20, FoldResult.CLOSE_SUFFIX_NONE, 0));
+        }
+        FoldDiskCache reopened = new FoldDiskCache(file, "1", 4, DIRECT);
+        assertEquals(4, reopened.size());
+        for (int i = 16; i < 20; i++) {
+            assertSameResult(new FoldResult(true, i, 10, 20, FoldResult.CLOSE_SUFFIX_NONE, 0), reopened.get(i, 0));
+        }
+        assertNull(reopened.get(15, 0));
+    }
+
+    @Test
+    public void versionChangeDiscardsRecords() throws IOException {
+        File file = folder.newFile("fold");
+        new FoldDiskCache(file, "1", 16, DIRECT).put(1, 1, FoldResult.NOT_EXPANDABLE);
+
+        FoldDiskCache reopened = new FoldDiskCache(file, "2", 16, DIRECT);
+        assertEquals(0, reopened.size());
+        assertNull(reopened.get(1, 1));
+    }
+
+    @Test
+    public void corruptFileIsDiscarded() throws IOException {
+        File file = folder.newFile("fold");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+        } finally {
+            out.close();
+        }
+        FoldDiskCache cache = new FoldDiskCache(file, "1", 16, DIRECT);
+        assertEquals(0, cache.size());
+        cache.put(1, 1, FoldResult.NOT_EXPANDABLE);
+
+        FoldDiskCache reopened = new FoldDiskCache(file, "1", 16, DIRECT);
+        assertSame(FoldResult.NOT_EXPANDABLE, reopened.get(1, 1));
+    }
+}
@@ -0,0 +1,229 @@
+package com.diallee.view;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 只排版前缀的折叠在展开时补全推迟的部分后，与排版全文的折叠结果一致
+ */
+public class FoldEnginePrefixTest {
+
+    /**
+     * 不做估算，总是排版全文的测量
+     */
+    private static final class FullLayoutMeasurer implements FoldEngine.Measurer {
+        private final FoldEngine.Measurer measurer;
+
+        FullLayoutMeasurer(FoldEngine.Measurer measurer) {
+            this.measurer = measurer;
+        }
+
+        @Override
+        public int textLength() {
+            return measurer.textLength();
+        }
+
+        @Override
+        public int estimate(int maxLines) {
+            return FoldMetrics.ESTIMATE_UNCERTAIN;
+        }
+
+        @Override
+        public FoldEngine.Lines layoutText() {
+            return measurer.layoutText();
+        }
+
+        @Override
+        public FoldEngine.Lines layoutTextPrefix(int end) {
+            return measurer.layoutTextPrefix(end);
+        }
+
+        @Override
+        public int estimateLineLength() {
+            return measurer.estimateLineLength();
+        }
+
+        @Override
+        public boolean isGreedyLineBreak() {
+            return measurer.isGreedyLineBreak();
+        }
+
+        @Override
+        public int paragraphEnd(int offset) {
+            return measurer.paragraphEnd(offset);
+        }
+
+        @Override
+        public FoldEngine.Lines layoutCloseText(int closePos) {
+            return measurer.layoutCloseText(closePos);
+        }
+
+        @Override
+        public FoldEngine.Lines layoutOpenText(int gap) {
+            return measurer.layoutOpenText(gap);
+        }
+
+        @Override
+        public float closeSuffixWidth() {
+            return measurer.closeSuffixWidth();
+        }
+
+        @Override
+        public boolean hasCloseSuffix() {
+            return measurer.hasCloseSuffix();
+        }
+    }
+
+    @Test
+    public void prefixFoldMatchesFullFold() {
+        Random random = new Random(20201018);
+        int partial = 0;
+        for (int i = 0; i < 3000; i++) {
+            String text = FoldEngineTest.randomText(random, 1 + random.nextInt(3000));
+            int contentWidth = 8 + random.nextInt(40);
+            int maxLines = 1 + random.nextInt(6);
+            boolean closeInNewLine = random.nextInt(4) == 0;
+            boolean closeAlignRight = random.nextBoolean();
+            String closeSuffix = random.nextInt(5) == 0 ? "" : "收起";
+            String message = "case " + i;
+            MonospaceMeasurer measurer = new MonospaceMeasurer(text, "展开", closeSuffix, 1, 10, contentWidth);
+
+            FoldResult full = FoldEngine.fold(new FullLayoutMeasurer(measurer), maxLines, contentWidth,
+                    closeInNewLine, closeAlignRight, 0);
+            FoldResult prefix = FoldEngine.fold(measurer, maxLines, contentWidth,
+                    closeInNewLine, closeAlignRight, 1);
+            assertEquals(message, full.expandable, prefix.expandable);
+            if (!full.expandable) {
+                continue;
+            }
+            assertEquals(message, full.closePosition, prefix.closePosition);
+            assertEquals(message, full.closeHeight, prefix.closeHeight);
+            if (prefix.closeSuffixMode == FoldResult.CLOSE_SUFFIX_DEFERRED) {
+                partial++;
+                prefix = FoldEngine.resolveDeferred(measurer, prefix, contentWidth, closeInNewLine, closeAlignRight);
+            }
+            assertEquals(message, full.closeSuffixMode, prefix.closeSuffixMode);
+            assertEquals(message, full.closeSuffixGap, prefix.closeSuffixGap);
+            // 没有收起后缀时展开的高度可以留到展开时测量
+            if (prefix.openHeight != FoldResult.UNKNOWN_HEIGHT) {
+                assertEquals(message, full.openHeight, prefix.openHeight);
+            }
+        }
+        assertTrue(partial > 500);
+    }
+
+    /**
+     * 按段落决定换行位置的测量，检查前缀只在段落结束处截断
+     */
+    private static final class ParagraphMeasurer implements FoldEngine.Measurer {
+        private final MonospaceMeasurer measurer;
+        private final String text;
+
+        ParagraphMeasurer(MonospaceMeasurer measurer, String text) {
+            this.measurer = measurer;
+            this.text = text;
+        }
+
+        @Override
+        public int textLength() {
+            return measurer.textLength();
+        }
+
+        @Override
+        public int estimate(int maxLines) {
+            return measurer.estimate(maxLines);
+        }
+
+        @Override
+        public FoldEngine.Lines layoutText() {
+            return measurer.layoutText();
+        }
+
+        @Override
+        public FoldEngine.Lines layoutTextPrefix(int end) {
+            assertTrue("prefix end " + end, end == text.length() || text.charAt(end - 1) == '\n');
+            return measurer.layoutTextPrefix(end);
+        }
+
+        @Override
+        public int estimateLineLength() {
+            return measurer.estimateLineLength();
+        }
+
+        @Override
+        public boolean isGreedyLineBreak() {
+            return false;
+        }
+
+        @Override
+        public int paragraphEnd(int offset) {
+            return measurer.paragraphEnd(offset);
+        }
+
+        @Override
+        public FoldEngine.Lines layoutCloseText(int closePos) {
+            return measurer.layoutCloseText(closePos);
+        }
+
+        @Override
+        public FoldEngine.Lines layoutOpenText(int gap) {
+            return measurer.layoutOpenText(gap);
+        }
+
+        @Override
+        public float closeSuffixWidth() {
+            return measurer.closeSuffixWidth();
+        }
+
+        @Override
+        public boolean hasCloseSuffix() {
+            return measurer.hasCloseSuffix();
+        }
+    }
+
+    @Test
+    public void nonGreedyPrefixEndsAtParagraphEnd() {
+        Random random = new Random(20201019);
+        for (int i = 0; i < 1000; i++) {
+            String text = FoldEngineTest.randomText(random, 1 + random.nextInt(3000));
+            int contentWidth = 8 + random.nextInt(40);
+            int maxLines = 1 + random.nextInt(6);
+            boolean closeInNewLine = random.nextInt(4) == 0;
+            boolean closeAlignRight = random.nextBoolean();
+            String message = "case " + i;
+            MonospaceMeasurer measurer = new MonospaceMeasurer(text, "展开", "收起", 1, 10, contentWidth);
+
+            FoldResult full = FoldEngine.fold(new FullLayoutMeasurer(measurer), maxLines, contentWidth,
+                    closeInNewLine, closeAlignRight, 0);
+            FoldResult prefix = FoldEngine.fold(new ParagraphMeasurer(measurer, text), maxLines, contentWidth,
+                    closeInNewLine, closeAlignRight, 1);
+            assertEquals(message, full.expandable, prefix.expandable);
+            if (!full.expandable) {
+                continue;
+            }
+            assertEquals(message, full.closePosition, prefix.closePosition);
+            assertEquals(message, full.closeHeight, prefix.closeHeight);
+        }
+    }
+
+    @Test
+    public void overflowEstimateKeepsFinalResultWithoutThreshold() {
+        // 估算为一定超过最大行数，未启用前缀排版时仍然直接得到收起后缀的位置
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("word ");
+        }
+        MonospaceMeasurer measurer = new MonospaceMeasurer(text.toString(), "展开", "收起", 1, 10, 20);
+        assertEquals(FoldMetrics.ESTIMATE_OVERFLOWS, measurer.estimate(2));
+        FoldResult result = FoldEngine.fold(measurer, 2, 20, false, false, 0);
+        FoldResult full = FoldEngine.fold(new FullLayoutMeasurer(measurer), 2, 20, false, false, 0);
+        assertTrue(result.expandable);
+        assertTrue(result.closeSuffixMode != FoldResult.CLOSE_SUFFIX_DEFERRED);
+        assertEquals(full.closeSuffixMode, result.closeSuffixMode);
+        assertEquals(full.openHeight, result.openHeight);
+    }
+}
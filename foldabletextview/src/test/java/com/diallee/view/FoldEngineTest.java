@@ -0,0 +1,151 @@
+package com.diallee.view;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 收起位置的二分查找与原来逐个字符缩短的循环结果一致
+ * 按单词换行时更长的前缀可能反而放得下，这时只要求二分查找的结果放得下且不超过循环的结果
+ */
+public class FoldEngineTest {
+    private static final String OPEN_SUFFIX = "展开";
+    private static final String CLOSE_SUFFIX = "收起";
+
+    /**
+     * 原来的实现：从第maxLines行结束的位置开始每次去掉一个字符，直到拼接省略号和展开后缀后能放下
+     *
+     * @return 不需要收起时返回-1
+     */
+    static int shrinkClosePosition(FoldEngine.Measurer measurer, int maxLines) {
+        FoldEngine.Lines layout = measurer.layoutText();
+        if (layout.getLineCount() <= maxLines) {
+            return -1;
+        }
+        int closePos = Math.min(layout.getLineEnd(maxLines - 1), measurer.textLength());
+        while (closePos > 0 && measurer.layoutCloseText(closePos).getLineCount() > maxLines) {
+            closePos--;
+        }
+        return closePos;
+    }
+
+    /**
+     * 比较折叠结果与逐个字符缩短的结果
+     *
+     * @return 是否需要收起
+     */
+    static boolean assertSameAsShrinkLoop(MonospaceMeasurer measurer, int maxLines, int contentWidth,
+                                          String message) {
+        int expected = shrinkClosePosition(measurer, maxLines);
+        FoldResult result = FoldEngine.fold(measurer, maxLines, contentWidth, false, false, 0);
+        assertEquals(message, expected >= 0, result.expandable);
+        if (expected < 0) {
+            return false;
+        }
+        if (isMonotonic(measurer, maxLines, expected)) {
+            assertEquals(message, expected, result.closePosition);
+        } else {
+            assertTrue(message, result.closePosition <= expected);
+            assertTrue(message, measurer.layoutCloseText(result.closePosition).getLineCount() <= maxLines);
+        }
+        assertEquals(message, measurer.layoutCloseText(result.closePosition).getHeight(), result.closeHeight);
+        return true;
+    }
+
+    /**
+     * 截取位置在[0, endPos]内是否越大越难放下
+     */
+    static boolean isMonotonic(FoldEngine.Measurer measurer, int maxLines, int endPos) {
+        boolean fit = true;
+        for (int closePos = 0; closePos <= endPos; closePos++) {
+            boolean closeFits = measurer.layoutCloseText(closePos).getLineCount() <= maxLines;
+            if (closeFits && !fit) {
+                return false;
+            }
+            fit = closeFits;
+        }
+        return true;
+    }
+
+    static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                // 英文单词
+                int wordLength = 1 + random.nextInt(12);
+                for (int i = 0; i < wordLength; i++) {
+                    text.append((char) ('a' + random.nextInt(26)));
+                }
+                text.append(' ');
+            } else if (kind < 9) {
+                text.append((char) ('一' + random.nextInt(500)));
+            } else {
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void matchesShrinkLoopOnRandomTexts() {
+        Random random = new Random(20201017);
+        int expandable = 0;
+        for (int i = 0; i < 3000; i++) {
+            String text = randomText(random, 1 + random.nextInt(400));
+            int contentWidth = 8 + random.nextInt(40);
+            int maxLines = 1 + random.nextInt(6);
+            MonospaceMeasurer measurer = new MonospaceMeasurer(text, OPEN_SUFFIX, CLOSE_SUFFIX, 1, 10, contentWidth);
+            if (assertSameAsShrinkLoop(measurer, maxLines, contentWidth, "case " + i)) {
+                expandable++;
+            }
+        }
+        assertTrue(expandable > 1000);
+    }
+
+    @Test
+    public void keepsLineEndWhenSuffixFits() {
+        // 第一行在空格后换行，宽度为6，剩余的宽度放得下省略号和展开后缀
+        String text = "abcde fghijklmnopqrstuvwxyz";
+        MonospaceMeasurer measurer = new MonospaceMeasurer(text, OPEN_SUFFIX, CLOSE_SUFFIX, 1, 10, 12);
+        FoldResult result = FoldEngine.fold(measurer, 1, 12, false, false, 0);
+        assertTrue(result.expandable);
+        assertEquals(6, result.closePosition);
+    }
+
+    @Test
+    public void closePositionZeroWhenSuffixAloneOverflows() {
+        // 省略号和展开后缀的宽度为5，一行只有4，任何前缀都放不下
+        String text = "abcd efgh ijkl mnop";
+        MonospaceMeasurer measurer = new MonospaceMeasurer(text, OPEN_SUFFIX, CLOSE_SUFFIX, 1, 10, 4);
+        FoldResult result = FoldEngine.fold(measurer, 1, 4, false, false, 0);
+        assertTrue(result.expandable);
+        assertEquals(0, result.closePosition);
+        assertEquals(shrinkClosePosition(measurer, 1), result.closePosition);
+    }
+
+    @Test
+    public void suffixWiderThanLine() {
+        // 后缀需要两行，最大行数足够时仍然截取最长的前缀
+        String text = "aaaaa bbbbb ccccc ddddd eeeee fffff";
+        String openSuffix = "全部展开全部";
+        for (int maxLines = 1; maxLines <= 4; maxLines++) {
+            MonospaceMeasurer measurer = new MonospaceMeasurer(text, openSuffix, CLOSE_SUFFIX, 1, 10, 6);
+            assertTrue(assertSameAsShrinkLoop(measurer, maxLines, 6, "maxLines " + maxLines));
+        }
+        MonospaceMeasurer measurer = new MonospaceMeasurer(text, openSuffix, CLOSE_SUFFIX, 1, 10, 6);
+        assertEquals(0, FoldEngine.fold(measurer, 1, 6, false, false, 0).closePosition);
+        assertTrue(FoldEngine.fold(measurer, 4, 6, false, false, 0).closePosition > 0);
+    }
+
+    @Test
+    public void notExpandableWhenTextFits() {
+        MonospaceMeasurer measurer = new MonospaceMeasurer("abc def", OPEN_SUFFIX, CLOSE_SUFFIX, 1, 10, 20);
+        assertFalse(FoldEngine.fold(measurer, 1, 20, false, false, 0).expandable);
+        assertFalse(FoldEngine.fold(measurer, 0, 20, false, false, 0).expandable);
+    }
+}
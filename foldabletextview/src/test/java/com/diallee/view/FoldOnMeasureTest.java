@@ -0,0 +1,120 @@
+package com.diallee.view;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在测量阶段折叠：每次绑定只有一次测量和布局，第一次测量就得到收起状态的高度
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class FoldOnMeasureTest {
+    private static final int VIEW_WIDTH = 480;
+    // Robolectric的StaticLayout不会自动换行，用硬换行分成多段保证超过最大行数
+    private static final String LONG_TEXT;
+
+    static {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append("Flutter是谷歌的移动UI框架，可以快速在iOS和Android上构建高质量的原生用户界面。\n");
+        }
+        LONG_TEXT = text.toString();
+    }
+
+    private FrameLayout mParent;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        mParent = new FrameLayout(activity);
+        activity.setContentView(mParent);
+        // 与真机一致，post的任务在下一帧（idle）执行，而不是立即执行
+        ShadowLooper.pauseMainLooper();
+    }
+
+    private CountingTextView createView() {
+        CountingTextView view = new CountingTextView(mParent.getContext());
+        view.setHasAnimation(false);
+        view.setMaxLines(3);
+        mParent.addView(view, new FrameLayout.LayoutParams(VIEW_WIDTH, ViewGroup.LayoutParams.WRAP_CONTENT));
+        return view;
+    }
+
+    private static void layout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    private static void idle() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    /**
+     * 测量一次后显示收起文本，之后不再请求布局，高度也不再变化
+     */
+    private static void assertOneLayoutPass(CountingTextView view, String text) {
+        layout(view);
+        assertTrue(view.getText().length() < text.length());
+        int height = view.getMeasuredHeight();
+        view.mRequestLayoutCount = 0;
+        idle();
+        assertEquals(0, view.mRequestLayoutCount);
+        assertFalse(view.isLayoutRequested());
+        layout(view);
+        assertEquals(height, view.getMeasuredHeight());
+    }
+
+    @Test
+    public void firstMeasureIsCollapsed() {
+        CountingTextView view = createView();
+        view.setText(LONG_TEXT);
+        assertOneLayoutPass(view, LONG_TEXT);
+    }
+
+    @Test
+    public void rebindWithSameWidth() {
+        CountingTextView view = createView();
+        view.setText(LONG_TEXT);
+        layout(view);
+        idle();
+        // 宽度不变时重新设置文本也在下一次测量时折叠，不需要手动调用setOriginalText
+        String otherText = "RecyclerView" + LONG_TEXT;
+        view.setText(otherText);
+        assertOneLayoutPass(view, otherText);
+        assertTrue(view.getText().toString().startsWith("RecyclerView"));
+    }
+
+    /**
+     * 统计requestLayout的调用次数
+     */
+    private static class CountingTextView extends FoldableTextView {
+        int mRequestLayoutCount;
+
+        CountingTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void requestLayout() {
+            mRequestLayoutCount++;
+            super.requestLayout();
+        }
+    }
+}
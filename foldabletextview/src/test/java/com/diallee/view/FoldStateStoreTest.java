@@ -0,0 +1,88 @@
+package com.diallee.view;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 条目数不超过上限，移除和清空后淘汰顺序仍然正确
+ */
+public class FoldStateStoreTest {
+
+    private static FoldStateStore.Entry entry(boolean expanded) {
+        return new FoldStateStore.Entry(0, 0, 0, FoldResult.NOT_EXPANDABLE, 0, 0, expanded);
+    }
+
+    @Test
+    public void evictsWhenFull() {
+        FoldStateStore store = new FoldStateStore(2);
+        store.put(1, entry(false));
+        store.put(2, entry(false));
+        store.put(3, entry(false));
+        assertEquals(2, store.size());
+        assertNull(store.get(1));
+        assertNotNull(store.get(2));
+        assertNotNull(store.get(3));
+    }
+
+    @Test
+    public void staysBoundedAfterRemove() {
+        FoldStateStore store = new FoldStateStore(2);
+        store.put(1, entry(false));
+        store.put(2, entry(false));
+        store.remove(2);
+        store.put(3, entry(false));
+        store.put(4, entry(false));
+        assertEquals(2, store.size());
+        assertNull(store.get(1));
+        assertNotNull(store.get(3));
+        assertNotNull(store.get(4));
+    }
+
+    @Test
+    public void staysBoundedAfterClear() {
+        FoldStateStore store = new FoldStateStore(3);
+        for (long id = 0; id < 3; id++) {
+            store.put(id, entry(false));
+        }
+        store.clear();
+        for (long id = 10; id < 20; id++) {
+            store.put(id, entry(false));
+            assertTrue(store.size() <= 3);
+        }
+        assertEquals(3, store.size());
+        assertNotNull(store.get(19));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        FoldStateStore store = new FoldStateStore(2);
+        store.put(1, entry(true));
+        store.put(2, entry(false));
+        // 访问后1比2更新
+        assertTrue(store.isExpanded(1));
+        store.put(3, entry(false));
+        assertNotNull(store.get(1));
+        assertNull(store.get(2));
+    }
+
+    @Test
+    public void updatingExistingIdDoesNotEvict() {
+        FoldStateStore store = new FoldStateStore(2);
+        store.put(1, entry(false));
+        store.put(2, entry(false));
+        store.put(1, entry(true));
+        assertEquals(2, store.size());
+        assertTrue(store.isExpanded(1));
+        assertFalse(store.isExpanded(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveSize() {
+        new FoldStateStore(0);
+    }
+}
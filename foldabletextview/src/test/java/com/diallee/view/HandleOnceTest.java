@@ -0,0 +1,108 @@
+package com.diallee.view;
+
+import android.app.Activity;
+import android.os.Build;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ClickableSpan;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 只处理一次模式下绑定、展开和收起整个过程中文本内容处理只调用一次
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class HandleOnceTest {
+    private static final int VIEW_WIDTH = 480;
+    // Robolectric的StaticLayout不会自动换行，用硬换行分成多段保证超过最大行数
+    private static final String LONG_TEXT;
+
+    static {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append("Flutter是谷歌的移动UI框架，可以快速在iOS和Android上构建高质量的原生用户界面。\n");
+        }
+        LONG_TEXT = text.toString();
+    }
+
+    private FrameLayout mParent;
+    private int mHandlerCalls;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        mParent = new FrameLayout(activity);
+        activity.setContentView(mParent);
+    }
+
+    /**
+     * 控件在第一次确定宽度时折叠，文本需要在添加到父布局之前设置
+     */
+    private FoldableTextView createView(boolean handleOnce) {
+        FoldableTextView view = new FoldableTextView(mParent.getContext());
+        view.setHasAnimation(false);
+        view.setMaxLines(3);
+        view.setHandleOnce(handleOnce);
+        view.setCharSequenceToSpannableHandler(new FoldableTextView.CharSequenceToSpannableHandler() {
+            @Override
+            public SpannableStringBuilder charSequenceToSpannable(CharSequence charSequence) {
+                mHandlerCalls++;
+                return new SpannableStringBuilder(charSequence);
+            }
+        });
+        view.setText(LONG_TEXT);
+        mParent.addView(view, new FrameLayout.LayoutParams(VIEW_WIDTH, ViewGroup.LayoutParams.WRAP_CONTENT));
+        return view;
+    }
+
+    private static void layout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * 点击文本末尾的展开或收起后缀
+     */
+    private static void clickSuffix(FoldableTextView view) {
+        Spanned text = (Spanned) view.getText();
+        ClickableSpan[] spans = text.getSpans(0, text.length(), ClickableSpan.class);
+        assertEquals(1, spans.length);
+        spans[0].onClick(view);
+        layout(view);
+    }
+
+    @Test
+    public void handlerCalledOnceAcrossToggle() {
+        FoldableTextView view = createView(true);
+        layout(view);
+        String closeText = view.getText().toString();
+        assertTrue(closeText.length() < LONG_TEXT.length());
+        // 展开和收起都使用处理后的文本，不再调用handler
+        clickSuffix(view);
+        assertTrue(view.getText().toString().startsWith(LONG_TEXT));
+        clickSuffix(view);
+        assertEquals(closeText, view.getText().toString());
+        assertEquals(1, mHandlerCalls);
+    }
+
+    @Test
+    public void handlerCalledPerPrefixByDefault() {
+        FoldableTextView view = createView(false);
+        layout(view);
+        assertTrue(view.getText().length() < LONG_TEXT.length());
+        assertTrue(mHandlerCalls > 1);
+    }
+}
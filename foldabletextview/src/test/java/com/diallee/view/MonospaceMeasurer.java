@@ -0,0 +1,245 @@
+package com.diallee.view;
+
+import java.util.Arrays;
+
+/**
+ * JVM上使用的等宽测量实现：拉丁字符宽度为1个单位，中日韩字符为2个单位，
+ * 在空格和中日韩字符处换行，单词超过一行时按字符换行，结果是确定的
+ */
+final class MonospaceMeasurer implements FoldEngine.Measurer {
+    static final String ELLIPSIS_STRING = "\u2026";
+    // 收起后缀前插入的空白占位字符
+    private static final char GAP_CHAR = '\uFFFC';
+
+    private final String text;
+    private final String openSuffix;
+    private final String closeSuffix;
+    private final float advance;
+    private final int lineHeight;
+    private final int contentWidth;
+
+    MonospaceMeasurer(String text, String openSuffix, String closeSuffix, float advance,
+                      int lineHeight, int contentWidth) {
+        this.text = text;
+        this.openSuffix = openSuffix;
+        this.closeSuffix = closeSuffix;
+        this.advance = advance;
+        this.lineHeight = lineHeight;
+        this.contentWidth = contentWidth;
+    }
+
+    @Override
+    public int textLength() {
+        return text.length();
+    }
+
+    @Override
+    public int estimate(int maxLines) {
+        int minLines = 0;
+        boolean fits = true;
+        float width = 0;
+        // 行尾的空格不计入行宽，计算最少行数时减去全部空格的宽度
+        float spacesWidth = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == '\n') {
+                fits &= width <= contentWidth;
+                minLines += minLines(width, spacesWidth);
+                if (minLines > maxLines) {
+                    return FoldMetrics.ESTIMATE_OVERFLOWS;
+                }
+                width = 0;
+                spacesWidth = 0;
+                continue;
+            }
+            char c = text.charAt(i);
+            width += advance(c, 0);
+            if (c == ' ') {
+                spacesWidth += advance;
+            }
+            if (minLines + minLines(width, spacesWidth) > maxLines) {
+                return FoldMetrics.ESTIMATE_OVERFLOWS;
+            }
+        }
+        return fits ? FoldMetrics.ESTIMATE_FITS : FoldMetrics.ESTIMATE_UNCERTAIN;
+    }
+
+    private int minLines(float width, float spacesWidth) {
+        return Math.max(1, (int) Math.ceil((width - spacesWidth) / contentWidth));
+    }
+
+    @Override
+    public FoldEngine.Lines layoutText() {
+        return new MonospaceLines(text, 0);
+    }
+
+    @Override
+    public FoldEngine.Lines layoutTextPrefix(int end) {
+        return new MonospaceLines(text.substring(0, end), 0);
+    }
+
+    @Override
+    public int estimateLineLength() {
+        return (int) Math.ceil(contentWidth / advance);
+    }
+
+    @Override
+    public boolean isGreedyLineBreak() {
+        return true;
+    }
+
+    @Override
+    public int paragraphEnd(int offset) {
+        if (offset == 0) {
+            return 0;
+        }
+        int newline = text.indexOf('\n', offset - 1);
+        return newline < 0 ? text.length() : newline + 1;
+    }
+
+    @Override
+    public FoldEngine.Lines layoutCloseText(int closePos) {
+        StringBuilder closeText = new StringBuilder(closePos + 1 + openSuffix.length());
+        closeText.append(text, 0, Math.min(closePos, text.length())).append(ELLIPSIS_STRING).append(openSuffix);
+        return new MonospaceLines(closeText, 0);
+    }
+
+    @Override
+    public FoldEngine.Lines layoutOpenText(int gap) {
+        StringBuilder openText = new StringBuilder(text.length() + 1 + closeSuffix.length());
+        openText.append(text);
+        if (gap > 0) {
+            openText.append(GAP_CHAR);
+        }
+        openText.append(closeSuffix);
+        return new MonospaceLines(openText, gap);
+    }
+
+    @Override
+    public float closeSuffixWidth() {
+        return measure(ELLIPSIS_STRING, 0) + measure(openSuffix, 0);
+    }
+
+    @Override
+    public boolean hasCloseSuffix() {
+        return !closeSuffix.isEmpty();
+    }
+
+    private float measure(CharSequence s, int gap) {
+        float width = 0;
+        for (int i = 0; i < s.length(); i++) {
+            width += advance(s.charAt(i), gap);
+        }
+        return width;
+    }
+
+    private float advance(char c, int gap) {
+        if (c == GAP_CHAR) {
+            return gap;
+        }
+        return isCjk(c) ? advance * 2 : advance;
+    }
+
+    private static boolean isCjk(char c) {
+        return c >= '\u2E80';
+    }
+
+    private final class MonospaceLines implements FoldEngine.Lines {
+        private final CharSequence lineText;
+        private final int gap;
+        private int[] lineStarts = new int[16];
+        private float[] lineWidths = new float[16];
+        private int lineCount;
+
+        MonospaceLines(CharSequence lineText, int gap) {
+            this.lineText = lineText;
+            this.gap = gap;
+            breakLines();
+        }
+
+        private void breakLines() {
+            int length = lineText.length();
+            int lineStart = 0;
+            float width = 0;
+            int lastBreak = -1;
+            float widthAtBreak = 0;
+            for (int i = 0; i < length; i++) {
+                char c = lineText.charAt(i);
+                if (c == '\n') {
+                    addLine(lineStart, width);
+                    lineStart = i + 1;
+                    width = 0;
+                    lastBreak = -1;
+                    continue;
+                }
+                float w = advance(c, gap);
+                if (width + w > contentWidth && i > lineStart) {
+                    if (lastBreak > lineStart) {
+                        addLine(lineStart, widthAtBreak);
+                        lineStart = lastBreak;
+                        width -= widthAtBreak;
+                    } else {
+                        addLine(lineStart, width);
+                        lineStart = i;
+                        width = 0;
+                    }
+                    lastBreak = -1;
+                }
+                width += w;
+                if (c == ' ' || isCjk(c)) {
+                    lastBreak = i + 1;
+                    widthAtBreak = width;
+                }
+            }
+            addLine(lineStart, width);
+        }
+
+        private void addLine(int start, float width) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lineWidths = Arrays.copyOf(lineWidths, lineCount * 2);
+            }
+            lineStarts[lineCount] = start;
+            lineWidths[lineCount] = width;
+            lineCount++;
+        }
+
+        @Override
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        @Override
+        public int getLineStart(int line) {
+            return lineStarts[line];
+        }
+
+        @Override
+        public int getLineEnd(int line) {
+            return line + 1 < lineCount ? lineStarts[line + 1] : lineText.length();
+        }
+
+        @Override
+        public int getHeight() {
+            return lineCount * lineHeight;
+        }
+
+        @Override
+        public float getLineWidth(int line) {
+            return lineWidths[line];
+        }
+
+        @Override
+        public int getOffsetForHorizontal(int line, float horiz) {
+            int end = getLineEnd(line);
+            float x = 0;
+            for (int i = getLineStart(line); i < end; i++) {
+                float w = advance(lineText.charAt(i), gap);
+                if (x + w / 2 > horiz) {
+                    return i;
+                }
+                x += w;
+            }
+            return end;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.diallee.view;
+
+import android.app.Activity;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * P上TextViewCompat.setPrecomputedText会直接设置PrecomputedTextCompat本身，不能再转发，否则会无限递归
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P, shadows = ShadowGreedyStaticLayout.class)
+public class PrecomputedTextTest {
+    private static final int VIEW_WIDTH = 30;
+
+    private FrameLayout mParent;
+    private final FoldStatistics mStatistics = FoldStatistics.getInstance();
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        mParent = new FrameLayout(activity);
+        activity.setContentView(mParent);
+        ShadowLooper.pauseMainLooper();
+        mStatistics.reset();
+        mStatistics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        mStatistics.setEnabled(false);
+        mStatistics.reset();
+    }
+
+    @Test
+    public void compatTextOnPieIsSetDirectly() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            builder.append("Flutter是谷歌的移动UI框架，可以快速在iOS和Android上构建高质量的原生用户界面。\n");
+        }
+        String text = builder.toString();
+        FoldableTextView view = new FoldableTextView(mParent.getContext());
+        view.setHasAnimation(false);
+        view.setMaxLines(3);
+        mParent.addView(view, new FrameLayout.LayoutParams(VIEW_WIDTH, ViewGroup.LayoutParams.WRAP_CONTENT));
+        view.setText(PrecomputedTextCompat.create(text, TextViewCompat.getTextMetricsParams(view)));
+        view.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        // 按普通文本折叠，没有可以复用的测量结果
+        assertTrue(view.getText().length() < text.length());
+        assertEquals(0, mStatistics.getPrecomputedHitCount());
+        assertTrue(mStatistics.getPrecomputedMissCount() > 0);
+    }
+}
@@ -0,0 +1,98 @@
+package com.diallee.view;
+
+import android.os.Build;
+import android.text.StaticLayout;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * Robolectric默认的StaticLayout不会自动换行，每一段只占一行
+ * 这里按每个字符宽度为1贪心换行，与Robolectric中Paint测量的宽度一致：优先在空格之后和中文字符前后换行，
+ * 单词超过一行时在字符之间换行，行尾的空格不计入行宽
+ * 只实现了Android P的native方法，测试需要使用{@code @Config(sdk = Build.VERSION_CODES.P)}
+ */
+@Implements(value = StaticLayout.class, looseSignatures = true, minSdk = Build.VERSION_CODES.P,
+        maxSdk = Build.VERSION_CODES.P)
+public class ShadowGreedyStaticLayout {
+
+    @Implementation
+    protected static int nComputeLineBreaks(Object nativePtr, Object text, Object measuredTextPtr, Object length,
+                                            Object firstWidth, Object firstWidthLineCount, Object restWidth,
+                                            Object variableTabStops, Object defaultTabStop, Object indentsOffset,
+                                            Object recycle, Object recycleLength, Object recycleBreaks,
+                                            Object recycleWidths, Object recycleAscents, Object recycleDescents,
+                                            Object recycleFlags, Object charWidths) {
+        char[] chars = (char[]) text;
+        int count = (Integer) length;
+        int[] breaks = new int[count + 1];
+        float[] widths = new float[count + 1];
+        int lines = 0;
+        int lineStart = 0;
+        // 当前行中最后一个可以换行的位置：空格之后、中文字符前后
+        int opportunity = 0;
+        for (int i = 0; i < count; i++) {
+            char c = chars[i];
+            if (c == '\n' || c == ' ') {
+                continue;
+            }
+            if (i > 0 && (chars[i - 1] == ' ' || isIdeographic(chars[i - 1]) || isIdeographic(c))) {
+                opportunity = i;
+            }
+            while (i > lineStart && i - lineStart + 1 > limit(lines, firstWidth, firstWidthLineCount, restWidth)) {
+                int lineEnd = opportunity > lineStart ? opportunity : i;
+                breaks[lines] = lineEnd;
+                widths[lines] = visibleWidth(chars, lineStart, lineEnd);
+                lines++;
+                lineStart = lineEnd;
+            }
+        }
+        breaks[lines] = count;
+        widths[lines] = visibleWidth(chars, lineStart, count);
+        lines++;
+
+        float[] advances = (float[]) charWidths;
+        for (int i = 0; i < Math.min(count, advances.length); i++) {
+            advances[i] = chars[i] == '\n' ? 0 : 1;
+        }
+        if (lines > (Integer) recycleLength) {
+            ReflectionHelpers.setField(recycle, "breaks", new int[lines]);
+            ReflectionHelpers.setField(recycle, "widths", new float[lines]);
+            ReflectionHelpers.setField(recycle, "ascents", new float[lines]);
+            ReflectionHelpers.setField(recycle, "descents", new float[lines]);
+            ReflectionHelpers.setField(recycle, "flags", new int[lines]);
+        }
+        int[] outBreaks = ReflectionHelpers.getField(recycle, "breaks");
+        float[] outWidths = ReflectionHelpers.getField(recycle, "widths");
+        float[] outAscents = ReflectionHelpers.getField(recycle, "ascents");
+        float[] outDescents = ReflectionHelpers.getField(recycle, "descents");
+        int[] outFlags = ReflectionHelpers.getField(recycle, "flags");
+        for (int i = 0; i < lines; i++) {
+            outBreaks[i] = breaks[i];
+            outWidths[i] = widths[i];
+            outAscents[i] = 0;
+            outDescents[i] = 0;
+            outFlags[i] = 0;
+        }
+        return lines;
+    }
+
+    private static float limit(int line, Object firstWidth, Object firstWidthLineCount, Object restWidth) {
+        return line < (Integer) firstWidthLineCount ? (Float) firstWidth : (Float) restWidth;
+    }
+
+    private static boolean isIdeographic(char c) {
+        return c >= '\u2E80';
+    }
+
+    /**
+     * 行宽不包含行尾的空格和换行符
+     */
+    private static int visibleWidth(char[] chars, int start, int end) {
+        while (end > start && (chars[end - 1] == ' ' || chars[end - 1] == '\n')) {
+            end--;
+        }
+        return end - start;
+    }
+}